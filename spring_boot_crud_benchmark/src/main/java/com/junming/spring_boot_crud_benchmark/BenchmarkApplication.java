@@ -0,0 +1,56 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.junming.spring_boot_crud_example.SpringBootCrudExampleApplication;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the real application for the benchmarks, but on an in-memory H2 database and with a fixed, seeded catalog,
+ * so two runs of the same commit measure the same thing.
+ *
+ * How to run (from the repository root):
+ *   mvn -B install -DskipTests
+ *   java -jar spring_boot_crud_benchmark/target/benchmarks.jar -rf json -rff jmh-result.json
+ * Keep jmh-result.json of every release and compare them to catch regressions.
+ */
+final class BenchmarkApplication {
+
+    static final int CATALOG_SIZE = 10_000;
+
+    //command line arguments win over the application.properties packed in the application jar (which points at MySQL)
+    private static final String[] EMBEDDED_DATABASE = {
+            "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;MODE=MySQL",
+            "--spring.datasource.driver-class-name=org.h2.Driver",
+            "--spring.datasource.username=sa",
+            "--spring.jpa.hibernate.ddl-auto=create-drop",
+            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "--spring.jpa.show-sql=false",
+            "--server.port=0",
+            "--logging.level.root=WARN"
+    };
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        ConfigurableApplicationContext context = SpringApplication.run(SpringBootCrudExampleApplication.class, EMBEDDED_DATABASE);
+        context.getBean(ProductService.class).saveProducts(catalog(CATALOG_SIZE));
+        return context;
+    }
+
+    /**
+     * the same products every time: product-0 .. product-(size - 1), ids 1 .. size on an empty table
+     */
+    static List<Product> catalog(int size) {
+        List<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(new Product(null, "product-" + i, i % 500, 1.0 + (i % 1000) * 0.25));
+        }
+        return products;
+    }
+}
@@ -0,0 +1,421 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.junming.spring_boot_crud_example.SpringBootCrudExampleApplication;
+import com.junming.spring_boot_crud_example.entity.Product;
+import io.netty.buffer.Unpooled;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end latency of the ProductController routes under a fixed request rate, as HDR histograms.
+ *
+ * Starts the application in a fresh JVM on an embedded H2 database with a seeded catalog, then sends a mix of routes at a constant
+ * rate for warmup + duration. The load is open loop: request i is due at start + i / rate whether or not earlier ones have been
+ * answered, and its latency is measured from that due time, not from when it was actually sent. A server that stalls for a second
+ * therefore shows the queue it built up in the percentiles instead of hiding it (coordinated omission). The time from sending to
+ * the answer is recorded too, as service time.
+ *
+ * Requests still unanswered when the drain timeout after the last one runs out are cancelled and recorded at the highest latency
+ * (one minute) and counted as timedOut, so the slowest requests are never left out of the percentiles.
+ *
+ * Writes report.json (settings, and per route: count, errors, timedOut, rate and percentiles in milliseconds) and one HdrHistogram
+ * percentile distribution (.hgrm) per route into report-dir. Route choice and ids come from a seeded Random, so two runs of the
+ * same settings send the same requests: keep report.json of every release and diff them. Load shedding is switched off in the
+ * application, this measures the routes and not the limiter.
+ *
+ * Settings are key=value arguments (defaults in brackets); arguments starting with -- go to the application:
+ *   rate [200]  requests per second      duration [30s]   warmup [10s]      connections [256]   products [10000]
+ *   seed [42]   report-dir [load-test]   mix [byId:50,byName:10,page:15,add:10,update:10,delete:5]
+ * The routes of the mix: byId, byName, page, list (every product), search, add, update, delete (only products added by add; until
+ * there is one, delete sends an add instead, still reported as delete).
+ *
+ * How to run (from the repository root):
+ *   mvn -B install -DskipTests
+ *   java -cp spring_boot_crud_benchmark/target/benchmarks.jar com.junming.spring_boot_crud_benchmark.LoadTest rate=500 duration=60s
+ */
+public final class LoadTest {
+
+    private static final File LOG = new File(System.getProperty("java.io.tmpdir"), "load-test.log");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);  //slower answers are recorded as one minute
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Map<String, String> settings;
+    private final Map<String, RouteStats> routes = new LinkedHashMap<>();
+    private final String[] mix;       //one entry per weight point, so a uniform pick follows the weights
+    private final Random random;
+    private final Set<InFlight> inFlight = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Integer> added = new ConcurrentLinkedQueue<>();  //what delete may remove
+    private HttpClient client;
+    private int[] ids;
+    private String[] names;
+
+    private LoadTest(Map<String, String> settings) {
+        this.settings = settings;
+        this.random = new Random(Long.parseLong(settings.get("seed")));
+        List<String> points = new ArrayList<>();
+        for (String entry : settings.get("mix").split(",")) {
+            String[] routeAndWeight = entry.trim().split(":");
+            String route = routeAndWeight[0];
+            if (!Arrays.asList("byId", "byName", "page", "list", "search", "add", "update", "delete").contains(route)) {
+                throw new IllegalArgumentException("unknown route in mix: " + route);
+            }
+            routes.put(route, new RouteStats());
+            for (int i = Integer.parseInt(routeAndWeight[1]); i > 0; i--) {
+                points.add(route);
+            }
+        }
+        this.mix = points.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);  //logback logs everything from Netty otherwise
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("rate", "200");
+        settings.put("duration", "30s");
+        settings.put("warmup", "10s");
+        settings.put("connections", "256");
+        settings.put("products", "10000");
+        settings.put("seed", "42");
+        settings.put("report-dir", "load-test");
+        settings.put("mix", "byId:50,byName:10,page:15,add:10,update:10,delete:5");
+        List<String> appArgs = new ArrayList<>(Arrays.asList(StartupBenchmark.EMBEDDED_DATABASE));
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                appArgs.add(arg);
+            } else if (arg.contains("=") && settings.containsKey(arg.substring(0, arg.indexOf('=')))) {
+                settings.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("unknown argument " + arg + ", expected one of " + settings.keySet() + " as key=value");
+            }
+        }
+        new LoadTest(settings).run(appArgs);
+    }
+
+    private void run(List<String> appArgs) throws Exception {
+        int port = StartupBenchmark.freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xms512m");
+        command.add("-Xmx512m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SpringBootCrudExampleApplication.class.getName());
+        command.addAll(appArgs);
+        command.add("--server.port=" + port);
+        command.add("--product.load-shedding.enabled=false");
+
+        Files.deleteIfExists(LOG.toPath());
+        System.out.println("application output goes to " + LOG);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(LOG))
+                .start();
+        String base = "http://localhost:" + port;
+        int connections = Integer.parseInt(settings.get("connections"));
+        ConnectionProvider pool = ConnectionProvider.builder("load-test").maxConnections(connections).pendingAcquireMaxCount(-1).build();
+        try {
+            while (!StartupBenchmark.answers(new URL(base + "/products/page?limit=1"))) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("the application exited with " + process.exitValue() + ", see " + LOG);
+                }
+                Thread.sleep(50);
+            }
+            client = HttpClient.create(pool).baseUrl(base).headers(headers -> headers.set("Content-Type", "application/json"));
+            seed(Integer.parseInt(settings.get("products")));
+
+            double rate = Double.parseDouble(settings.get("rate"));
+            send(rate, Duration.parse("PT" + settings.get("warmup").toUpperCase()));
+            routes.values().forEach(RouteStats::reset);  //warmup is not reported
+            long sendNanos = send(rate, Duration.parse("PT" + settings.get("duration").toUpperCase()));
+            report(sendNanos);
+        } finally {
+            pool.disposeLater().block();
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private void seed(int products) throws IOException {
+        byte[] body = MAPPER.writeValueAsBytes(BenchmarkApplication.catalog(products));
+        String response = client.post().uri("/addProducts")
+                .send(Mono.just(Unpooled.wrappedBuffer(body)))
+                .responseContent().aggregate().asString()
+                .block();
+        JsonNode saved = MAPPER.readTree(response);
+        ids = new int[saved.size()];
+        names = new String[saved.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = saved.get(i).get("id").asInt();
+            names[i] = saved.get(i).get("name").asText();
+        }
+    }
+
+    /**
+     * sends requests at the given rate for the given time, then waits for the last answers. Returns how long sending took.
+     */
+    private long send(double rate, Duration duration) throws IOException {
+        long start = System.nanoTime();
+        long requests = (long) (rate * duration.toNanos() / 1e9);
+        for (long i = 0; i < requests; i++) {
+            long due = start + (long) (i * 1e9 / rate);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            //behind schedule (a GC pause here, a full connection pool): send at once, the latency still counts from due
+            send(mix[random.nextInt(mix.length)], due);
+        }
+        long sendNanos = System.nanoTime() - start;
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (!inFlight.isEmpty() && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        for (InFlight request : inFlight) {
+            request.timeOut();  //never answered: counted as the slowest possible, not left out
+        }
+        return sendNanos;
+    }
+
+    private void send(String route, long due) throws IOException {
+        HttpClient.ResponseReceiver<?> request;
+        boolean adds = route.equals("add");
+        int row = random.nextInt(ids.length);
+        int id = ids[row];
+        switch (route) {
+            case "byId":
+                request = client.get().uri("/productById/" + id);
+                break;
+            case "byName":
+                request = client.get().uri("/product/" + names[row]);
+                break;
+            case "page":
+                request = client.get().uri("/products/page?after=" + id + "&limit=100");
+                break;
+            case "list":
+                request = client.get().uri("/products");
+                break;
+            case "search":
+                request = client.get().uri("/products/search?minPrice=10&maxPrice=50&minQuantity=" + random.nextInt(500) + "&limit=100");
+                break;
+            case "add":
+                request = post("/addProduct", new Product(null, "load-test-" + random.nextInt(1_000_000), random.nextInt(500), 9.99));
+                break;
+            case "update":
+                request = client.put().uri("/update").send(body(new Product(id, names[row], random.nextInt(500), 19.99)));
+                break;
+            case "delete":
+                Integer addedId = added.poll();
+                if (addedId == null) {  //nothing added yet: add instead, so the seeded catalog stays as it is (recorded as delete)
+                    request = post("/addProduct", new Product(null, "load-test-" + random.nextInt(1_000_000), random.nextInt(500), 9.99));
+                    adds = true;
+                } else {
+                    request = client.delete().uri("/delete/" + addedId);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(route);
+        }
+        boolean recordsAdded = adds;
+        InFlight pending = new InFlight(routes.get(route), due, System.nanoTime());
+        inFlight.add(pending);
+        pending.subscription = request.responseSingle((response, content) -> content.asString().defaultIfEmpty("")
+                        .map(text -> {
+                            if (recordsAdded && response.status().code() == 200) {
+                                added.add(id(text));
+                            }
+                            return response.status().code();
+                        }))
+                .subscribe(pending::answered, error -> pending.failed(), pending::failed);  //completing without an answer fails
+    }
+
+    private static int id(String savedProduct) {
+        try {
+            return MAPPER.readTree(savedProduct).get("id").asInt();
+        } catch (IOException e) {
+            throw new IllegalStateException("not a product: " + savedProduct, e);
+        }
+    }
+
+    private HttpClient.ResponseReceiver<?> post(String uri, Product product) throws IOException {
+        return client.post().uri(uri).send(body(product));
+    }
+
+    private static Mono<io.netty.buffer.ByteBuf> body(Product product) throws IOException {
+        return Mono.just(Unpooled.wrappedBuffer(MAPPER.writeValueAsBytes(product)));
+    }
+
+    private void report(long sendNanos) throws IOException {
+        File dir = new File(settings.get("report-dir"));
+        Files.createDirectories(dir.toPath());
+        double seconds = sendNanos / 1e9;
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("java", System.getProperty("java.version"));
+        environment.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("settings", settings);
+        report.put("environment", environment);
+        Map<String, Object> results = new LinkedHashMap<>();
+        Histogram all = new Histogram(HIGHEST_MICROS, 3);
+
+        System.out.printf("%-8s %8s %7s %8s %9s %9s %9s %9s %9s %9s %12s%n",
+                "route", "count", "errors", "timedOut", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "p99 svc ms");
+        for (Map.Entry<String, RouteStats> entry : routes.entrySet()) {
+            RouteStats stats = entry.getValue();
+            Histogram latency = stats.latency.getIntervalHistogram();
+            Histogram service = stats.service.getIntervalHistogram();
+            all.add(latency);
+            results.put(entry.getKey(), summary(latency, service, stats.errors.sum(), stats.timedOut.sum(), seconds));
+            try (PrintStream out = new PrintStream(new FileOutputStream(new File(dir, entry.getKey() + ".hgrm")), false, "UTF-8")) {
+                latency.outputPercentileDistribution(out, 1000.0);  //micros recorded, milliseconds written
+            }
+            print(entry.getKey(), latency, service, stats.errors.sum(), stats.timedOut.sum(), seconds);
+        }
+        print("all", all, null, routes.values().stream().mapToLong(stats -> stats.errors.sum()).sum(),
+                routes.values().stream().mapToLong(stats -> stats.timedOut.sum()).sum(), seconds);
+        report.put("routes", results);
+        File json = new File(dir, "report.json");
+        MAPPER.writer().with(SerializationFeature.INDENT_OUTPUT).writeValue(json, report);
+        System.out.println("latency is measured from when a request was due, service time from when it was sent");
+        System.out.println("report written to " + json.getAbsolutePath());
+    }
+
+    private static Map<String, Object> summary(Histogram latency, Histogram service, long errors, long timedOut, double seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", latency.getTotalCount());  //includes timedOut
+        summary.put("errors", errors);
+        summary.put("timedOut", timedOut);
+        summary.put("requestsPerSecond", Math.round(latency.getTotalCount() / seconds * 10) / 10.0);
+        summary.put("latencyMillis", percentiles(latency));
+        summary.put("serviceTimeMillis", percentiles(service));
+        return summary;
+    }
+
+    private static Map<String, Double> percentiles(Histogram histogram) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", millis(histogram.getValueAtPercentile(50)));
+        percentiles.put("p90", millis(histogram.getValueAtPercentile(90)));
+        percentiles.put("p99", millis(histogram.getValueAtPercentile(99)));
+        percentiles.put("p99.9", millis(histogram.getValueAtPercentile(99.9)));
+        percentiles.put("max", millis(histogram.getMaxValue()));
+        return percentiles;
+    }
+
+    private static void print(String route, Histogram latency, Histogram service, long errors, long timedOut, double seconds) {
+        System.out.printf("%-8s %,8d %,7d %,8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %12s%n", route, latency.getTotalCount(), errors,
+                timedOut, latency.getTotalCount() / seconds, millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                millis(latency.getValueAtPercentile(99)), millis(latency.getValueAtPercentile(99.9)), millis(latency.getMaxValue()),
+                service == null ? "" : String.format("%.2f", millis(service.getValueAtPercentile(99))));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * Latency and service time of one route. Recorder lets the Netty threads record while nothing blocks them.
+     */
+    private static final class RouteStats {
+
+        final Recorder latency = new Recorder(HIGHEST_MICROS, 3);
+        final Recorder service = new Recorder(HIGHEST_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+
+        void record(long due, long sent, long done) {
+            latency.recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(done - due)));
+            service.recordValue(Math.min(HIGHEST_MICROS, TimeUnit.NANOSECONDS.toMicros(done - sent)));
+        }
+
+        void reset() {
+            latency.reset();
+            service.reset();
+            errors.reset();
+            timedOut.reset();
+        }
+    }
+
+    /**
+     * One request that has not been settled yet. It is settled exactly once: by its answer, by its failure, or by the drain timeout,
+     * whichever comes first. An answer after the timeout is ignored.
+     */
+    private final class InFlight {
+
+        final RouteStats stats;
+        final long due;
+        final long sent;
+        final AtomicBoolean settled = new AtomicBoolean();
+        volatile Disposable subscription;
+
+        InFlight(RouteStats stats, long due, long sent) {
+            this.stats = stats;
+            this.due = due;
+            this.sent = sent;
+        }
+
+        void answered(int status) {
+            long done = System.nanoTime();
+            if (settle()) {
+                if (status >= 200 && status < 300) {
+                    stats.record(due, sent, done);
+                } else {
+                    stats.errors.increment();
+                }
+            }
+        }
+
+        void failed() {
+            if (settle()) {
+                stats.errors.increment();
+            }
+        }
+
+        void timeOut() {
+            if (settle()) {
+                stats.latency.recordValue(HIGHEST_MICROS);
+                stats.service.recordValue(HIGHEST_MICROS);
+                stats.timedOut.increment();
+                Disposable running = subscription;
+                if (running != null) {
+                    running.dispose();  //frees its connection for the next phase
+                }
+            }
+        }
+
+        private boolean settle() {
+            inFlight.remove(this);
+            return settled.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+/**
+ * Full Spring MVC dispatch (handler mapping, argument resolution, Jackson, service, H2) through MockMvc.
+ * No sockets are involved, so the difference to ProductServiceBenchmark is the cost of the web layer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProductControllerBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private byte[] newProductJson;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start();
+        mockMvc = webAppContextSetup((WebApplicationContext) context).build();
+        newProductJson = context.getBean(ObjectMapper.class).writeValueAsBytes(new Product(null, "new-product", 1, 1.0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private int nextId() {
+        next = next % BenchmarkApplication.CATALOG_SIZE + 1;
+        return next;
+    }
+
+    @Benchmark
+    public MvcResult findProductById() throws Exception {
+        return mockMvc.perform(get("/productById/{id}", nextId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findProductByName() throws Exception {
+        return mockMvc.perform(get("/product/{name}", "product-" + (nextId() - 1))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findProductsPage() throws Exception {
+        return mockMvc.perform(get("/products/page").param("after", String.valueOf(nextId() - 1)).param("limit", "100")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult addProduct() throws Exception {
+        return mockMvc.perform(post("/addProduct").contentType(MediaType.APPLICATION_JSON).content(newProductJson)).andReturn();
+    }
+}
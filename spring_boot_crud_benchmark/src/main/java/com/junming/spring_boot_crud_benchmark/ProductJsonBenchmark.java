@@ -0,0 +1,82 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * JSON (de)serialization of Product, one product and a list of 100, with an ObjectMapper configured like the one Spring MVC uses.
+ * No Spring context and no database, so this isolates the Jackson cost of every request.
+ * The ProductView benchmarks are the path the GET endpoints take (hand-written ProductViewSerializer), the Product ones the entity
+ * path through Jackson's reflective bean serializer. Add -prof gc to compare the bytes allocated per operation as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProductJsonBenchmark {
+
+    private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<List<Product>>() {};
+
+    private ObjectMapper mapper;
+    private Product product;
+    private List<Product> products;
+    private ProductView view;
+    private List<ProductView> views;
+    private byte[] productJson;
+    private byte[] productsJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        product = new Product(42, "product-42", 42, 11.5);
+        products = BenchmarkApplication.catalog(100);
+        for (int i = 0; i < products.size(); i++) {
+            products.get(i).setId(i + 1);
+        }
+        view = ProductView.of(product);
+        views = products.stream().map(ProductView::of).collect(Collectors.toList());
+        productJson = mapper.writeValueAsBytes(product);
+        productsJson = mapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] serializeProduct() throws IOException {
+        return mapper.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public byte[] serializeProductView() throws IOException {
+        return mapper.writeValueAsBytes(view);
+    }
+
+    @Benchmark
+    public Product deserializeProduct() throws IOException {
+        return mapper.readValue(productJson, Product.class);
+    }
+
+    @Benchmark
+    public byte[] serializeProductList() throws IOException {
+        return mapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] serializeProductViewList() throws IOException {
+        return mapper.writeValueAsBytes(views);
+    }
+
+    @Benchmark
+    public List<Product> deserializeProductList() throws IOException {
+        return mapper.readValue(productsJson, PRODUCT_LIST);
+    }
+}
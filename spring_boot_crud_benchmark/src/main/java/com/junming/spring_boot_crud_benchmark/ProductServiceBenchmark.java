@@ -0,0 +1,114 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.junming.spring_boot_crud_example.dto.InventoryReport;
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import com.junming.spring_boot_crud_example.service.InventoryAnalytics;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductService calls against the embedded H2 database, with the real repositories, transactions and lookup cache.
+ * Ids and names cycle through the seeded catalog in a fixed order, so every run touches the same rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProductServiceBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private ProductService service;
+    private ProductRepository repository;
+    private InventoryAnalytics analytics;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        service = context.getBean(ProductService.class);
+        repository = context.getBean(ProductRepository.class);
+        analytics = context.getBean(InventoryAnalytics.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private int nextId() {
+        next = next % BenchmarkApplication.CATALOG_SIZE + 1;
+        return next;
+    }
+
+    @Benchmark
+    public ProductView getProductById() {
+        return service.getProductById(nextId());
+    }
+
+    @Benchmark
+    public ProductView getProductByName() {
+        return service.getProductByName("product-" + (nextId() - 1));
+    }
+
+    //type-ahead from the in-memory name index: "product-12" matches product-12, product-120..129, product-1200..1299
+    @Benchmark
+    public List<ProductSuggestion> suggestProductsPrefix() {
+        return service.suggestProducts("product-" + nextId() % 100, 10);
+    }
+
+    //no name starts with "prodcut-", so every call falls through to the trigram scoring
+    @Benchmark
+    public List<ProductSuggestion> suggestProductsFuzzy() {
+        return service.suggestProducts("prodcut-" + nextId() % 100, 10);
+    }
+
+    @Benchmark
+    public List<ProductView> getProductsPage() {
+        return service.getProductsPage(nextId() - 1, 100);
+    }
+
+    //the same page as managed entities, the way getProductsPage read it before it returned ProductViews
+    @Benchmark
+    public List<Product> getProductsPageEntities() {
+        return repository.findByIdGreaterThanOrderByIdAsc(nextId() - 1, PageRequest.of(0, 100));
+    }
+
+    //stock value, low stock and a price histogram from the columnar snapshot (a fork-join scan of two primitive arrays)
+    @Benchmark
+    public InventoryReport inventoryReport() {
+        return analytics.report(null, 10);
+    }
+
+    //the same stock value the way a client computes it today: every product through getProducts()
+    @Benchmark
+    public double inventoryValueFromProducts() {
+        double value = 0;
+        for (ProductView product : service.getProducts()) {
+            if (product.getPrice() != null && product.getQuantity() != null) {
+                value += product.getPrice() * product.getQuantity();
+            }
+        }
+        return value;
+    }
+
+    @Benchmark
+    public Product saveProduct() {
+        return service.saveProduct(new Product(null, "new-product", 1, 1.0));
+    }
+
+    @Benchmark
+    public Product updateProduct() {
+        int id = nextId();
+        return service.updateProduct(new Product(id, "product-" + (id - 1), id % 500, 2.0));
+    }
+}
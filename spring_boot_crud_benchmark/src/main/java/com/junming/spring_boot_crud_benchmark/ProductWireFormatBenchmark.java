@@ -0,0 +1,79 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The wire formats ProductController can negotiate, on what internal services send and get most: GET /products (encode a list of
+ * ProductViews) and POST /addProducts (decode a list of Products). 100 products per payload, each with a lastModified.
+ * JMH has no column for size, so the payload size of every format is printed once per fork, at setup:
+ *   java -jar spring_boot_crud_benchmark/target/benchmarks.jar ProductWireFormatBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProductWireFormatBenchmark {
+
+    private static final TypeReference<List<Product>> PRODUCT_LIST = new TypeReference<List<Product>>() {};
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    private ObjectMapper mapper;
+    private List<ProductView> views;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = mapper(format);
+        List<Product> products = BenchmarkApplication.catalog(100);
+        Instant now = Instant.now();
+        for (int i = 0; i < products.size(); i++) {
+            products.get(i).setId(i + 1);
+            products.get(i).setLastModified(now);
+        }
+        views = products.stream().map(ProductView::of).collect(Collectors.toList());
+        payload = mapper.writeValueAsBytes(views);
+        System.out.printf("%n%s: %,d bytes for %d products%n", format, payload.length, views.size());
+    }
+
+    //configured like the converters in BinaryFormatsConfig (java.time as ISO strings, as Spring Boot does for JSON)
+    private static ObjectMapper mapper(String format) {
+        Jackson2ObjectMapperBuilder builder;
+        switch (format) {
+            case "smile":
+                builder = Jackson2ObjectMapperBuilder.smile();
+                break;
+            case "cbor":
+                builder = Jackson2ObjectMapperBuilder.cbor();
+                break;
+            default:
+                builder = Jackson2ObjectMapperBuilder.json();
+        }
+        return builder.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+    }
+
+    @Benchmark
+    public byte[] encodeProductList() throws IOException {
+        return mapper.writeValueAsBytes(views);
+    }
+
+    @Benchmark
+    public List<Product> decodeProductList() throws IOException {
+        return mapper.readValue(payload, PRODUCT_LIST);
+    }
+}
@@ -0,0 +1,196 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.junming.spring_boot_crud_example.SpringBootCrudExampleApplication;
+import com.junming.spring_boot_crud_example.entity.Product;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.netty.buffer.Unpooled;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servlet stack against reactive stack under the same load: for every number of requests in flight, the throughput and mean latency
+ * of GET /productById/{id}, and what the server needs for it: live threads and heap in use, sampled halfway through each run.
+ * The Tomcat stack parks one thread per request it is working on (up to server.tomcat.threads.max, 200); the reactive one serves
+ * everything from a few event loop threads, which is where the memory difference comes from (each thread has its own stack).
+ *
+ * Both run in a fresh JVM with the same heap on an embedded H2 database, which answers in microseconds. That hides most of what
+ * the reactive stack saves while waiting on a real database; pass JDBC and R2DBC urls of a MySQL to compare on that instead.
+ * Load shedding is switched off in both, this compares the stacks and not the limiter.
+ *
+ * How to run (from the repository root):
+ *   mvn -B install -DskipTests
+ *   java -cp spring_boot_crud_benchmark/target/benchmarks.jar com.junming.spring_boot_crud_benchmark.ReactiveLoadComparison \
+ *     [seconds per level, default 10] [jdbc url] [r2dbc url] [username] [password]
+ */
+public final class ReactiveLoadComparison {
+
+    private static final int[] IN_FLIGHT = {16, 64, 256, 1024};
+    private static final int PRODUCTS = 1000;
+    private static final File LOG = new File(System.getProperty("java.io.tmpdir"), "reactive-load-comparison.log");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ReactiveLoadComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);  //logback logs everything from Netty otherwise
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<String> database = new ArrayList<>();
+        if (args.length > 2) {
+            database.add("--spring.datasource.url=" + args[1]);
+            database.add("--spring.r2dbc.url=" + args[2]);
+            if (args.length > 3) {
+                database.add("--spring.datasource.username=" + args[3]);
+                database.add("--spring.r2dbc.username=" + args[3]);
+            }
+            if (args.length > 4) {
+                database.add("--spring.datasource.password=" + args[4]);
+                database.add("--spring.r2dbc.password=" + args[4]);
+            }
+        } else {
+            database.addAll(Arrays.asList(StartupBenchmark.EMBEDDED_DATABASE));
+            database.add("--spring.r2dbc.url=r2dbc:h2:mem:///startup?options=DB_CLOSE_DELAY=-1;MODE=MySQL");
+            database.add("--spring.r2dbc.username=sa");
+        }
+        Files.deleteIfExists(LOG.toPath());
+        System.out.println("application output goes to " + LOG);
+        System.out.printf("%-9s %9s %12s %14s %8s %10s %8s%n", "stack", "in flight", "requests/s", "mean latency", "errors", "threads", "heap");
+
+        compare("servlet", database, seconds);
+        List<String> reactive = new ArrayList<>(database);
+        reactive.add("--spring.profiles.active=reactive");
+        compare("reactive", reactive, seconds);
+    }
+
+    private static void compare(String stack, List<String> appArgs, int seconds) throws Exception {
+        int port = StartupBenchmark.freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xms512m");
+        command.add("-Xmx512m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SpringBootCrudExampleApplication.class.getName());
+        command.addAll(appArgs);
+        command.add("--server.port=" + port);
+        command.add("--product.load-shedding.enabled=false");
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(LOG))
+                .start();
+        String base = "http://localhost:" + port;
+        try {
+            while (!StartupBenchmark.answers(new URL(base + "/products/page?limit=1"))) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("the " + stack + " application exited with " + process.exitValue() + ", see " + LOG);
+                }
+                Thread.sleep(50);
+            }
+            int[] ids = seed(base);
+            run(base, ids, 64, Math.max(1, seconds / 2));  //warm up, not reported
+            for (int inFlight : IN_FLIGHT) {
+                Result result = run(base, ids, inFlight, seconds);
+                System.out.printf("%-9s %9d %,12.0f %11.2f ms %,8d %10d %5d MiB%n", stack, inFlight, result.requests / (double) seconds,
+                        result.requests == 0 ? 0.0 : result.nanos / (double) result.requests / 1e6, result.errors, result.threads,
+                        result.heapBytes >> 20);
+            }
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int[] seed(String base) throws IOException {
+        List<Product> products = BenchmarkApplication.catalog(PRODUCTS);
+        byte[] body = MAPPER.writeValueAsBytes(products);
+        String response = HttpClient.create()
+                .headers(headers -> headers.set("Content-Type", "application/json"))
+                .post().uri(base + "/addProducts")
+                .send(Mono.just(Unpooled.wrappedBuffer(body)))
+                .responseContent().aggregate().asString()
+                .block();
+        JsonNode saved = MAPPER.readTree(response);
+        int[] ids = new int[saved.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = saved.get(i).get("id").asInt();
+        }
+        return ids;
+    }
+
+    /**
+     * keeps inFlight requests going for the given time, each on its own connection, and samples the server halfway through
+     */
+    private static Result run(String base, int[] ids, int inFlight, int seconds) throws Exception {
+        ConnectionProvider connections = ConnectionProvider.builder("load").maxConnections(inFlight).pendingAcquireMaxCount(-1).build();
+        HttpClient client = HttpClient.create(connections).baseUrl(base);
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder nanos = new LongAdder();
+        Disposable load = Flux.range(0, Integer.MAX_VALUE)
+                .flatMap(i -> {
+                    long start = System.nanoTime();
+                    return client.get().uri("/productById/" + ids[ThreadLocalRandom.current().nextInt(ids.length)])
+                            .responseSingle((response, content) -> content.asByteArray().thenReturn(response.status().code())
+                                    .defaultIfEmpty(response.status().code()))
+                            .doOnNext(status -> {
+                                if (status == 200) {
+                                    requests.increment();
+                                    nanos.add(System.nanoTime() - start);
+                                } else {
+                                    errors.increment();
+                                }
+                            })
+                            .onErrorResume(e -> {
+                                errors.increment();
+                                return Mono.empty();
+                            });
+                }, inFlight)
+                .subscribe();
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) / 2);
+            Result result = new Result();
+            result.threads = (long) metric(base, "jvm.threads.live", null);
+            result.heapBytes = (long) metric(base, "jvm.memory.used", "area:heap");
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) / 2);
+            result.requests = requests.sum();
+            result.errors = errors.sum();
+            result.nanos = nanos.sum();
+            return result;
+        } finally {
+            load.dispose();
+            connections.disposeLater().block();
+        }
+    }
+
+    private static double metric(String base, String name, String tag) throws IOException {
+        String url = base + "/actuator/metrics/" + name + (tag == null ? "" : "?tag=" + tag);
+        return MAPPER.readTree(new URL(url)).get("measurements").get(0).get("value").asDouble();
+    }
+
+    private static final class Result {
+        long requests;
+        long errors;
+        long nanos;
+        long threads;
+        long heapBytes;
+    }
+}
@@ -0,0 +1,150 @@
+package com.junming.spring_boot_crud_benchmark;
+
+import com.junming.spring_boot_crud_example.SpringBootCrudExampleApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first request: how long a new instance takes from "java" being started until GET /products answers 200.
+ * That is what the autoscaler waits for, so it includes JVM startup, the whole Spring context and whatever lazy
+ * initialization the first request triggers. JMH cannot measure it (its forks are already running when a benchmark starts),
+ * so this is a plain main that starts a fresh JVM for every run:
+ *   default            application.properties as is (ddl-auto=update, springfox, eager beans)
+ *   fast-startup       --spring.profiles.active=fast-startup
+ *   fast-startup+cds   the same, with a class data sharing archive recorded by one training run (JDK 13+ only)
+ * Every instance starts on its own empty in-memory H2 database.
+ *
+ * How to run (from the repository root):
+ *   mvn -B install -DskipTests
+ *   java -cp spring_boot_crud_benchmark/target/benchmarks.jar com.junming.spring_boot_crud_benchmark.StartupBenchmark [runs per mode, default 5]
+ */
+public final class StartupBenchmark {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final File LOG = new File(System.getProperty("java.io.tmpdir"), "startup-benchmark.log");  //output of the started JVMs
+
+    static final String[] EMBEDDED_DATABASE = {
+            "--spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1;MODE=MySQL",
+            "--spring.datasource.driver-class-name=org.h2.Driver",
+            "--spring.datasource.username=sa",
+            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "--spring.jpa.show-sql=false",
+            "--logging.level.root=WARN",
+            "--spring.main.banner-mode=off"
+    };
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Files.deleteIfExists(LOG.toPath());
+        System.out.println("application output goes to " + LOG);
+
+        report("default", measure(runs, Collections.<String>emptyList(), Collections.<String>emptyList()));
+        List<String> fastStartup = Collections.singletonList("--spring.profiles.active=fast-startup");
+        report("fast-startup", measure(runs, Collections.<String>emptyList(), fastStartup));
+
+        if (javaVersion() < 13) {
+            System.out.println("fast-startup+cds: skipped, -XX:ArchiveClassesAtExit needs JDK 13 or later");
+            return;
+        }
+        Path archive = Files.createTempFile("startup-benchmark", ".jsa");
+        Files.delete(archive);  //the JVM writes it on exit of the training run
+        try {
+            timeToFirstRequest(Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive), fastStartup);
+            report("fast-startup+cds", measure(runs, Collections.singletonList("-XX:SharedArchiveFile=" + archive), fastStartup));
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private static long[] measure(int runs, List<String> jvmArgs, List<String> appArgs) throws Exception {
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            millis[i] = timeToFirstRequest(jvmArgs, appArgs);
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    /**
+     * starts the application in a new JVM, polls GET /products until it answers 200, then stops the JVM and waits for it to exit
+     */
+    private static long timeToFirstRequest(List<String> jvmArgs, List<String> appArgs) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));  //benchmarks.jar is a plain jar, so class data sharing can archive it
+        command.add(SpringBootCrudExampleApplication.class.getName());
+        command.addAll(Arrays.asList(EMBEDDED_DATABASE));
+        command.add("--server.port=" + port);
+        command.addAll(appArgs);
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(LOG))
+                .start();
+        try {
+            URL products = new URL("http://localhost:" + port + "/products");
+            while (!answers(products)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("the application exited with " + process.exitValue() + " before answering, see " + LOG);
+                }
+                if (System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)) {
+                    throw new IllegalStateException("no answer from " + products + " after " + TIMEOUT_MILLIS + " ms");
+                }
+                Thread.sleep(5);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            process.destroy();  //SIGTERM: a normal JVM exit, so a training run still writes its archive
+            process.waitFor();
+        }
+    }
+
+    static boolean answers(URL url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout((int) TIMEOUT_MILLIS);
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException notListeningYet) {
+            return false;
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+
+    private static void report(String mode, long[] millis) {
+        System.out.printf("%-17s time to first request over %d runs: min %,d ms, median %,d ms, max %,d ms%n",
+                mode, millis.length, millis[0], millis[millis.length / 2], millis[millis.length - 1]);
+    }
+}
@@ -0,0 +1,119 @@
+package com.junming.spring_boot_crud_example.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps how many requests may be in the application at once, and lowers the cap when responses get slower.
+ * The guarded endpoints all wait on MySQL, so their latency rising above its usual level means requests are queueing in the database.
+ * Letting even more in would only make every one of them slower, so the excess is rejected at once instead.
+ *
+ * The limit follows the gradient between the latency with no load and the current latency (the idea behind Netflix's
+ * concurrency-limits Gradient limiter). The current latency is a moving average over about the last 10 requests; the no-load
+ * latency is the lowest that average has been, drifting up over about a minute so that a permanently slower database is accepted.
+ * While the current latency stays within tolerance times the no-load one, the limit grows by about its square root.
+ * Above that it shrinks in proportion, down to min-limit.
+ *
+ * The limit is adjusted once per limit samples, roughly once for every generation of requests that went through it.
+ *
+ * Admission is one atomic increment. The averages are updated by whichever completing request gets the lock; a request that
+ * finds it taken skips its sample instead of waiting.
+ */
+public class AdaptiveConcurrencyLimiter implements MeterBinder {
+
+    private static final double LATENCY_SMOOTHING = 0.1;     //about the last 10 requests
+    private static final long NO_LOAD_DRIFT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final ReentrantLock sampleLock = new ReentrantLock();
+    private volatile int limit;
+
+    //guarded by sampleLock
+    private double estimatedLimit;
+    private double latency;
+    private double noLoadLatency;
+    private int windowSamples;
+    private int windowInFlight;
+    private long windowStart = System.nanoTime();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.estimatedLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * false when the limit is reached; the request must then be rejected. After true, release() must follow.
+     */
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void release(long latencyNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        if (!sampleLock.tryLock()) {
+            return;
+        }
+        try {
+            if (noLoadLatency == 0) {
+                latency = latencyNanos;
+                noLoadLatency = latencyNanos;
+                return;
+            }
+            latency += (latencyNanos - latency) * LATENCY_SMOOTHING;
+            noLoadLatency = Math.min(noLoadLatency, latency);
+            windowInFlight = Math.max(windowInFlight, inFlightBefore);
+            if (++windowSamples < estimatedLimit) {
+                return;  //the limit changes once per generation of requests, otherwise one slow spell would be counted many times over
+            }
+            int peakInFlight = windowInFlight;
+            windowSamples = 0;
+            windowInFlight = 0;
+            long now = System.nanoTime();
+            noLoadLatency += (latency - noLoadLatency) * Math.min(1.0, (now - windowStart) / (double) NO_LOAD_DRIFT_NANOS);
+            windowStart = now;
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * noLoadLatency / latency));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            if (newLimit > estimatedLimit && peakInFlight < estimatedLimit / 2) {
+                return;  //the limit is not what holds requests back, so this sample says nothing about a higher one
+            }
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit + (newLimit - estimatedLimit) * LIMIT_SMOOTHING));
+            limit = (int) estimatedLimit;
+        } finally {
+            sampleLock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Requests currently allowed in flight by the adaptive limiter")
+                .register(registry);
+        Gauge.builder("product.concurrency.in.flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests in flight through the adaptive limiter")
+                .register(registry);
+    }
+}
@@ -0,0 +1,35 @@
+package com.junming.spring_boot_crud_example.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Binary encodings of the same objects the JSON endpoints read and write, for internal services where JSON parsing and writing
+ * is a big share of the CPU. A client picks one with the Accept header (responses) and Content-Type (request bodies):
+ *  - application/x-jackson-smile: Smile, Jackson's binary JSON. Repeated field names (every product in a list) are sent once and
+ *    referenced afterwards, so lists are much smaller.
+ *  - application/cbor: CBOR (RFC 8949), for clients that are not on Jackson.
+ * JSON stays first, so clients that send no Accept header, or accept anything, still get JSON.
+ *
+ * Spring MVC would add both converters by itself now that the libraries are on the classpath, but with a plain ObjectMapper.
+ * These beans replace them with mappers built from Spring Boot's Jackson2ObjectMapperBuilder, so spring.jackson.* settings and
+ * modules (java.time as ISO strings, ...) are the same as for JSON.
+ */
+@Configuration(proxyBeanMethods = false)
+public class BinaryFormatsConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.createXmlMapper(false).factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.createXmlMapper(false).factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,73 @@
+package com.junming.spring_boot_crud_example.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One token bucket per client and endpoint class, so a script looping GET /products only uses up its own reads.
+ *
+ * Each bucket is a single AtomicLong holding the "theoretical arrival time" of the next request (the GCRA form of a token bucket):
+ * a request is allowed when that time is no further than burst intervals ahead of now, and then moves it one interval on.
+ * That is one compareAndSet per request, with no lock and no refill thread. A bucket that has been idle long enough to be full again
+ * is the same as no bucket at all, so buckets expire after that time, and at most max-clients of them are kept.
+ */
+public class ClientRateLimiter {
+
+    /**
+     * endpoint classes with separate limits: cheap reads, single writes, and bulk calls (batch writes, imports and full exports)
+     */
+    public enum EndpointClass {
+        READ, WRITE, BULK
+    }
+
+    private final Cache<String, AtomicLong> buckets;
+    private final Map<EndpointClass, Long> intervalNanos = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Long> toleranceNanos = new EnumMap<>(EndpointClass.class);
+    private final long origin = System.nanoTime();  //times are kept relative to this, so they start at 0 instead of an arbitrary nanoTime
+
+    /**
+     * @param ratesPerSecond requests per second per client, for every endpoint class
+     * @param bursts         requests a client may send at once after being idle, for every endpoint class
+     */
+    public ClientRateLimiter(Map<EndpointClass, Double> ratesPerSecond, Map<EndpointClass, Integer> bursts, long maxClients) {
+        long longestTolerance = 0;
+        for (EndpointClass endpoint : EndpointClass.values()) {
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / ratesPerSecond.get(endpoint));
+            long tolerance = interval * Math.max(1, bursts.get(endpoint));
+            intervalNanos.put(endpoint, interval);
+            toleranceNanos.put(endpoint, tolerance);
+            longestTolerance = Math.max(longestTolerance, tolerance);
+        }
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(longestTolerance))
+                .build();
+    }
+
+    /**
+     * takes one token from the client's bucket for this endpoint class.
+     * Returns 0 when the request may go ahead, otherwise how many nanoseconds until the next token (for Retry-After).
+     */
+    public long tryAcquire(String client, EndpointClass endpoint) {
+        AtomicLong arrival = buckets.get(endpoint.ordinal() + client, key -> new AtomicLong());
+        long interval = intervalNanos.get(endpoint);
+        long tolerance = toleranceNanos.get(endpoint);
+        long now = System.nanoTime() - origin;
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + interval;
+            if (next - now > tolerance) {
+                return next - now - tolerance;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
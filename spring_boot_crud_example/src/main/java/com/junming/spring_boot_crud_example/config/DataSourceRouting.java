@@ -0,0 +1,170 @@
+package com.junming.spring_boot_crud_example.config;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides, per thread, whether the next connection comes from the primary or from a replica, and which replica.
+ *
+ * Read-your-writes: replicas lag behind the primary, so a client that has just written must not read from one for a while.
+ * The first write of a request sets a cookie holding the end of that window. While a request carries the cookie, or a write happened
+ * earlier in the same request, every read goes to the primary.
+ *
+ * The cookie is signed (HMAC-SHA256), and a window longer than read-your-writes-window is cut down to it, so a client cannot
+ * make up a cookie that pins its reads to the primary for good.
+ */
+public class DataSourceRouting {
+
+    public static final String STICKY_COOKIE = "product-primary-until";
+    private static final String HMAC = "HmacSHA256";
+
+    private final int replicas;
+    private final long windowMillis;
+    private final SecretKeySpec cookieKey;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final ThreadLocal<Integer> replica = new ThreadLocal<>();           //set inside a @ReplicaRead method
+    private final ThreadLocal<Long> clientStickyUntil = new ThreadLocal<>();    //from the cookie, or this request's own write
+    private final ThreadLocal<Boolean> cookieSent = new ThreadLocal<>();        //one Set-Cookie per request is enough
+    private volatile long instanceStickyUntil;                                  //after any write on this instance, see ReplicaRead.fillsSharedCache
+
+    /**
+     * cookieSecret signs the cookie. Empty means a random key, which only this instance can verify.
+     */
+    public DataSourceRouting(int replicas, Duration readYourWritesWindow, String cookieSecret) {
+        this.replicas = replicas;
+        this.windowMillis = readYourWritesWindow.toMillis();
+        byte[] key = new byte[32];
+        if (cookieSecret == null || cookieSecret.isEmpty()) {
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = cookieSecret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.cookieKey = new SecretKeySpec(key, HMAC);
+        sign(0);  //fails at startup, not on the first write, if the JRE lacks the MAC, and loads the provider early
+    }
+
+    /**
+     * the replica the current thread reads from, or null for the primary
+     */
+    public Integer currentReplica() {
+        return replica.get();
+    }
+
+    /**
+     * Picks the next replica (round robin) for the current thread. Returns false, and picks nothing, when the read has to go to the primary
+     * or the thread already reads from a replica (a nested @ReplicaRead keeps the outer one's replica).
+     */
+    public boolean enterReplica(boolean fillsSharedCache) {
+        if (replicas == 0 || replica.get() != null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Long clientUntil = clientStickyUntil.get();
+        if ((clientUntil != null && now < clientUntil) || (fillsSharedCache && now < instanceStickyUntil)) {
+            return false;
+        }
+        replica.set(Math.floorMod(nextReplica.getAndIncrement(), replicas));
+        return true;
+    }
+
+    public void exitReplica() {
+        replica.remove();
+    }
+
+    /**
+     * Called for every connection handed out to a read-write transaction. Starts the read-your-writes window for the current client
+     * (cookie, if this thread serves a request) and for the shared cache.
+     */
+    public void markWrite() {
+        long until = System.currentTimeMillis() + windowMillis;
+        instanceStickyUntil = until;
+        clientStickyUntil.set(until);
+        if (cookieSent.get() != null) {
+            return;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+            if (response != null && !response.isCommitted()) {
+                Cookie cookie = new Cookie(STICKY_COOKIE, until + "." + sign(until));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) Math.max(1, (windowMillis + 999) / 1000));
+                response.addCookie(cookie);
+                cookieSent.set(Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * called by the request filter before the request is handled
+     */
+    public void beginRequest(HttpServletRequest request) {
+        clientStickyUntil.remove();
+        cookieSent.remove();
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (STICKY_COOKIE.equals(cookie.getName())) {
+                    Long until = verify(cookie.getValue());
+                    if (until != null) {
+                        clientStickyUntil.set(Math.min(until, System.currentTimeMillis() + windowMillis));
+                    }
+                }
+            }
+        }
+    }
+
+    public void endRequest() {
+        clientStickyUntil.remove();
+        cookieSent.remove();
+        replica.remove();
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * the end of the window in a cookie value we signed, or null if the value is not one of ours
+     */
+    private Long verify(String value) {
+        int dot = value == null ? -1 : value.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            long until = Long.parseLong(value.substring(0, dot));
+            byte[] expected = sign(until).getBytes(StandardCharsets.US_ASCII);
+            //constant time, so the signature cannot be guessed byte by byte
+            return MessageDigest.isEqual(expected, value.substring(dot + 1).getBytes(StandardCharsets.US_ASCII)) ? until : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String sign(long until) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);  //cheap, and a Mac is not thread safe
+            mac.init(cookieKey);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(Long.toString(until).getBytes(StandardCharsets.US_ASCII)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC + " is not available", e);  //every JRE has to provide it
+        }
+    }
+}
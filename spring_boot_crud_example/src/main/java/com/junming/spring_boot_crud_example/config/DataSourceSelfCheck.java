@@ -0,0 +1,155 @@
+package com.junming.spring_boot_crud_example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Startup self-check of the database setup. Once the application is up it borrows one connection, then logs the effective pool
+ * and driver settings together with anything that looks wrong for production. The same report is shown under "datasource" on /actuator/info.
+ */
+@Component
+public class DataSourceSelfCheck implements InfoContributor {
+
+    private static final Logger log = LoggerFactory.getLogger(DataSourceSelfCheck.class);
+
+    private final DataSource dataSource;
+    private final Environment environment;
+    private volatile Map<String, Object> report = Collections.emptyMap();
+
+    public DataSourceSelfCheck(DataSource dataSource, Environment environment) {
+        this.dataSource = dataSource;
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void check() {
+        report = buildReport();
+        log.info("DataSource self-check: {}", report);
+        for (Object warning : (List<?>) report.get("warnings")) {
+            log.warn("DataSource self-check: {}", warning);
+        }
+    }
+
+    public Map<String, Object> getReport() {
+        return report;
+    }
+
+    @Override
+    public void contribute(Info.Builder builder) {
+        builder.withDetail("datasource", report);
+    }
+
+    private Map<String, Object> buildReport() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<String> warnings = new ArrayList<>();
+        HikariDataSource pool = unwrap();
+        if (pool != null) {
+            Map<String, Object> poolReport = new LinkedHashMap<>();
+            poolReport.put("name", pool.getPoolName());
+            poolReport.put("maximumPoolSize", pool.getMaximumPoolSize());
+            poolReport.put("minimumIdle", pool.getMinimumIdle());
+            poolReport.put("connectionTimeoutMs", pool.getConnectionTimeout());
+            poolReport.put("leakDetectionThresholdMs", pool.getLeakDetectionThreshold());
+            poolReport.put("maxLifetimeMs", pool.getMaxLifetime());
+            poolReport.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            result.put("pool", poolReport);
+            if (pool.getLeakDetectionThreshold() == 0) {
+                warnings.add("connection leak detection is off (spring.datasource.hikari.leak-detection-threshold)");
+            }
+        }
+        if (environment.getProperty("spring.jpa.show-sql", Boolean.class, false)) {
+            warnings.add("spring.jpa.show-sql is on: every statement is written to stdout");
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, Object> driver = new LinkedHashMap<>();
+            driver.put("url", maskPasswords(metaData.getURL()));
+            driver.put("driver", metaData.getDriverName() + " " + metaData.getDriverVersion());
+            driver.put("database", metaData.getDatabaseProductName() + " " + metaData.getDatabaseProductVersion());
+            Map<String, String> settings = driverSettings(metaData.getURL(), pool == null ? new Properties() : pool.getDataSourceProperties());
+            driver.put("settings", settings);
+            result.put("driver", driver);
+            if (metaData.getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql")) {
+                checkMySql(connection, settings, pool, warnings);
+            }
+        } catch (SQLException e) {
+            warnings.add("could not borrow a connection: " + e.getMessage());
+        }
+        result.put("warnings", warnings);
+        return result;
+    }
+
+    private void checkMySql(Connection connection, Map<String, String> settings, HikariDataSource pool, List<String> warnings) throws SQLException {
+        if (!"true".equalsIgnoreCase(settings.get("cachePrepStmts"))) {
+            warnings.add("cachePrepStmts is not set: every statement is prepared (parsed) again");
+        }
+        if (!"true".equalsIgnoreCase(settings.get("useServerPrepStmts"))) {
+            warnings.add("useServerPrepStmts is not set: statements are not prepared on the server");
+        }
+        if (!"true".equalsIgnoreCase(settings.get("rewriteBatchedStatements"))) {
+            warnings.add("rewriteBatchedStatements is not set: JDBC batches are sent one statement at a time");
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("select @@max_connections")) {
+            if (rows.next() && pool != null) {
+                int maxConnections = rows.getInt(1);
+                int instances = environment.getProperty("product.datasource.pool.instances", Integer.class, 1);
+                if (pool.getMaximumPoolSize() * instances > maxConnections) {
+                    warnings.add(instances + " instance(s) x " + pool.getMaximumPoolSize() + " connections is more than the server's max_connections of " + maxConnections);
+                }
+            }
+        }
+    }
+
+    private HikariDataSource unwrap() {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * the driver settings that matter for statement caching and batching, from the url and from data-source-properties
+     */
+    private static Map<String, String> driverSettings(String url, Properties dataSourceProperties) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        int query = url == null ? -1 : url.indexOf('?');
+        if (query >= 0) {
+            for (String pair : url.substring(query + 1).split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    settings.put(pair.substring(0, equals), pair.substring(equals + 1));
+                }
+            }
+        }
+        dataSourceProperties.stringPropertyNames().forEach(name -> settings.put(name, dataSourceProperties.getProperty(name)));
+        settings.keySet().removeIf(name -> name.toLowerCase(Locale.ROOT).contains("password"));
+        return settings;
+    }
+
+    private static String maskPasswords(String url) {
+        return url == null ? null : url.replaceAll("(?i)(password=)[^&;]*", "$1****");
+    }
+}
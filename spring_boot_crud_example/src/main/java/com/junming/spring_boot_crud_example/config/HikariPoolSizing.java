@@ -0,0 +1,74 @@
+package com.junming.spring_boot_crud_example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizes every Hikari pool from the machine and the database instead of Hikari's fixed default of 10, when product.datasource.pool.auto-size=true
+ * (the prod profile) and spring.datasource.hikari.maximum-pool-size is not set explicitly.
+ *
+ * size = min(2 * cores + spindles, 90% of the database's max_connections / application instances)
+ *
+ * The first term is HikariCP's rule of thumb: a connection only helps while a core has something to do, and more just queue inside the database.
+ * The second keeps all instances together below the server limit, with room left for admin and replication connections.
+ * The pool is fixed size (minimum-idle = maximum), so a burst never waits for new connections to be opened.
+ */
+@Component
+public class HikariPoolSizing implements BeanPostProcessor, Ordered {
+
+    private final Environment environment;
+    private final boolean autoSize;
+    private final int dbMaxConnections;
+    private final int instances;
+    private final int spindles;
+
+    public HikariPoolSizing(Environment environment,
+                            @Value("${product.datasource.pool.auto-size:false}") boolean autoSize,
+                            @Value("${product.datasource.pool.db-max-connections:151}") int dbMaxConnections,  //MySQL's default max_connections
+                            @Value("${product.datasource.pool.instances:1}") int instances,
+                            @Value("${product.datasource.pool.spindles:1}") int spindles) {
+        this.environment = environment;
+        this.autoSize = autoSize;
+        this.dbMaxConnections = dbMaxConnections;
+        this.instances = instances;
+        this.spindles = spindles;
+    }
+
+    /**
+     * the pool size for this machine, whether or not auto-size is on
+     */
+    public int poolSize() {
+        int byCores = 2 * Runtime.getRuntime().availableProcessors() + spindles;
+        int byDatabase = Math.max(1, (int) (dbMaxConnections * 0.9) / Math.max(1, instances));
+        return Math.min(byCores, byDatabase);
+    }
+
+    /**
+     * applies the computed size to the pool, unless auto-size is off or the size was configured by hand
+     */
+    public void size(HikariDataSource pool) {
+        if (!autoSize || environment.containsProperty("spring.datasource.hikari.maximum-pool-size")) {
+            return;
+        }
+        int size = poolSize();
+        pool.setMaximumPoolSize(size);
+        pool.setMinimumIdle(size);
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource) {
+            size((HikariDataSource) bean);  //Boot's own pool. The replica pools are sized by ReadReplicaConfig.
+        }
+        return bean;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;  //after spring.datasource.hikari.* has been bound to the pool
+    }
+}
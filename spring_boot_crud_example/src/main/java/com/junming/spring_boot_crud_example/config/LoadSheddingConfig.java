@@ -0,0 +1,218 @@
+package com.junming.spring_boot_crud_example.config;
+
+import com.junming.spring_boot_crud_example.config.ClientRateLimiter.EndpointClass;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiting and load shedding in front of every product endpoint (not /actuator), only when product.load-shedding.enabled=true
+ * (the prod profile turns it on).
+ *
+ *  - every client gets its own token bucket per endpoint class (product.ratelimit.*); a client over its rate gets 429 with Retry-After.
+ *    The client is the product.ratelimit.client-header header when it holds one of the keys in product.ratelimit.api-keys, the remote
+ *    address otherwise. An unknown key is ignored, so a script cannot get a fresh bucket per request by sending a new key every time.
+ *    Behind a proxy the remote address is the X-Forwarded-For client (server.forward-headers-strategy in the prod profile), not the proxy.
+ *  - reads and single writes also go through the adaptive concurrency limit (product.concurrency.*); when the database slows down
+ *    the limit drops, and requests over it get 503 with Retry-After: 1. Bulk calls are not counted there, their own rate is low enough,
+ *    and neither is the change feed (/products/changes), whose requests wait for changes without using the database.
+ * Rejected requests never reach a controller and are answered without a body. They are counted in product.http.rejected
+ * (tags reason and endpoint); the limiter itself is on product.concurrency.limit and product.concurrency.in.flight.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "product.load-shedding.enabled", havingValue = "true")
+public class LoadSheddingConfig {
+
+    @Bean
+    public ClientRateLimiter clientRateLimiter(@Value("${product.ratelimit.read.rate:100}") double readRate,
+                                               @Value("${product.ratelimit.read.burst:200}") int readBurst,
+                                               @Value("${product.ratelimit.write.rate:20}") double writeRate,
+                                               @Value("${product.ratelimit.write.burst:40}") int writeBurst,
+                                               @Value("${product.ratelimit.bulk.rate:1}") double bulkRate,
+                                               @Value("${product.ratelimit.bulk.burst:5}") int bulkBurst,
+                                               @Value("${product.ratelimit.max-clients:100000}") long maxClients) {
+        Map<EndpointClass, Double> rates = new EnumMap<>(EndpointClass.class);
+        rates.put(EndpointClass.READ, readRate);
+        rates.put(EndpointClass.WRITE, writeRate);
+        rates.put(EndpointClass.BULK, bulkRate);
+        Map<EndpointClass, Integer> bursts = new EnumMap<>(EndpointClass.class);
+        bursts.put(EndpointClass.READ, readBurst);
+        bursts.put(EndpointClass.WRITE, writeBurst);
+        bursts.put(EndpointClass.BULK, bulkBurst);
+        return new ClientRateLimiter(rates, bursts, maxClients);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(@Value("${product.concurrency.initial-limit:20}") int initialLimit,
+                                                                 @Value("${product.concurrency.min-limit:5}") int minLimit,
+                                                                 @Value("${product.concurrency.max-limit:200}") int maxLimit,
+                                                                 @Value("${product.concurrency.tolerance:2.0}") double tolerance) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance);
+    }
+
+    @Bean
+    public FilterRegistrationBean<LoadSheddingFilter> loadSheddingFilter(ClientRateLimiter rateLimiter,
+                                                                         AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                                                         MeterRegistry registry,
+                                                                         @Value("${product.ratelimit.client-header:X-API-Key}") String clientHeader,
+                                                                         @Value("${product.ratelimit.api-keys:}") Set<String> apiKeys) {
+        FilterRegistrationBean<LoadSheddingFilter> registration =
+                new FilterRegistrationBean<>(new LoadSheddingFilter(rateLimiter, concurrencyLimiter, registry, clientHeader, apiKeys));
+        //after actuator's metrics filter (HIGHEST_PRECEDENCE + 1), so rejected requests still show up in http.server.requests
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    public static class LoadSheddingFilter extends OncePerRequestFilter {
+
+        private static final Set<String> BULK_PATHS = new HashSet<>(Arrays.asList("/addProducts", "/products/import", "/deleteProducts"));
+
+        private final ClientRateLimiter rateLimiter;
+        private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private final String clientHeader;
+        private final Set<String> apiKeys;
+        private final Map<EndpointClass, Counter> rateLimited = new EnumMap<>(EndpointClass.class);
+        private final Map<EndpointClass, Counter> shed = new EnumMap<>(EndpointClass.class);
+
+        LoadSheddingFilter(ClientRateLimiter rateLimiter, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                           MeterRegistry registry, String clientHeader, Set<String> apiKeys) {
+            this.rateLimiter = rateLimiter;
+            this.concurrencyLimiter = concurrencyLimiter;
+            this.clientHeader = clientHeader;
+            this.apiKeys = new HashSet<>(apiKeys);
+            for (EndpointClass endpoint : EndpointClass.values()) {
+                rateLimited.put(endpoint, rejected(registry, "rate_limit", endpoint));
+                shed.put(endpoint, rejected(registry, "concurrency", endpoint));
+            }
+        }
+
+        private static Counter rejected(MeterRegistry registry, String reason, EndpointClass endpoint) {
+            return Counter.builder("product.http.rejected")
+                    .description("Requests rejected before reaching a controller")
+                    .tag("reason", reason)
+                    .tag("endpoint", endpoint.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+
+        @Override
+        protected boolean shouldNotFilter(HttpServletRequest request) {
+            return path(request).startsWith("/actuator");
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            EndpointClass endpoint = endpointClass(request);
+            long waitNanos = rateLimiter.tryAcquire(client(request), endpoint);
+            if (waitNanos > 0) {
+                rateLimited.get(endpoint).increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, Math.max(1, (TimeUnit.NANOSECONDS.toMillis(waitNanos) + 999) / 1000));
+                return;
+            }
+            if (endpoint == EndpointClass.BULK || path(request).startsWith("/products/changes")) {
+                //the change feed holds its requests open on purpose, they would take slots from everything else while waiting
+                chain.doFilter(request, response);
+                return;
+            }
+            if (!concurrencyLimiter.tryAcquire()) {
+                shed.get(endpoint).increment();
+                reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1);
+                return;
+            }
+            long start = System.nanoTime();
+            boolean async = false;
+            try {
+                chain.doFilter(request, response);
+                if (request.isAsyncStarted()) {
+                    //the /async endpoints return before the work is done; the request holds its slot until the response is written
+                    request.getAsyncContext().addListener(new ReleaseOnComplete(concurrencyLimiter, start));
+                    async = true;
+                }
+            } finally {
+                if (!async) {
+                    concurrencyLimiter.release(System.nanoTime() - start);
+                }
+            }
+        }
+
+        static EndpointClass endpointClass(HttpServletRequest request) {
+            String path = path(request);
+            if (path.startsWith("/async/")) {
+                path = path.substring("/async".length());
+            }
+            String method = request.getMethod();
+            if (BULK_PATHS.contains(path) || path.startsWith("/products/stream") || ("PATCH".equals(method) && "/products".equals(path))) {
+                return EndpointClass.BULK;
+            }
+            return "GET".equals(method) || "HEAD".equals(method) ? EndpointClass.READ : EndpointClass.WRITE;
+        }
+
+        private static String path(HttpServletRequest request) {
+            return request.getRequestURI().substring(request.getContextPath().length());
+        }
+
+        private String client(HttpServletRequest request) {
+            String key = request.getHeader(clientHeader);
+            if (key != null && apiKeys.contains(key)) {
+                return "key:" + key;  //prefixed, so a key that looks like an address never shares its bucket
+            }
+            return "addr:" + request.getRemoteAddr();
+        }
+
+        private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds) {
+            response.setStatus(status.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        }
+    }
+
+    private static class ReleaseOnComplete implements AsyncListener {
+
+        private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private final long start;
+
+        ReleaseOnComplete(AdaptiveConcurrencyLimiter concurrencyLimiter, long start) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            concurrencyLimiter.release(System.nanoTime() - start);  //also called after a timeout or an error
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
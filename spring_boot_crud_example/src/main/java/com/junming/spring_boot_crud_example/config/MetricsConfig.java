@@ -0,0 +1,63 @@
+package com.junming.spring_boot_crud_example.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collection;
+
+/**
+ * Metrics for the product hot paths, exposed with everything else on /actuator/prometheus:
+ *  - product.service timers, one per ProductService operation (the @Timed annotations are only honoured because of the TimedAspect below)
+ *  - product.rows, how many rows findAll and saveAll handled per call
+ * HikariCP pool metrics, Hibernate statistics and http.server.requests are bound by Spring Boot's actuator auto-configuration.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    @Bean
+    public ProductRowsAspect productRowsAspect(MeterRegistry registry) {
+        return new ProductRowsAspect(registry);
+    }
+
+    @Aspect
+    public static class ProductRowsAspect {
+
+        private final DistributionSummary findAllRows;
+        private final DistributionSummary saveAllRows;
+
+        ProductRowsAspect(MeterRegistry registry) {
+            this.findAllRows = rows(registry, "findAll");
+            this.saveAllRows = rows(registry, "saveAll");
+        }
+
+        private static DistributionSummary rows(MeterRegistry registry, String operation) {
+            return DistributionSummary.builder("product.rows")
+                    .description("Rows returned or written per call")
+                    .baseUnit("rows")
+                    .tag("operation", operation)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .serviceLevelObjectives(1, 10, 100, 1_000, 10_000, 100_000)
+                    .register(registry);
+        }
+
+        @AfterReturning(pointcut = "execution(* com.junming.spring_boot_crud_example.service.ProductService.getProducts(..))", returning = "products")
+        public void afterFindAll(Collection<?> products) {
+            findAllRows.record(products.size());
+        }
+
+        @AfterReturning(pointcut = "execution(* com.junming.spring_boot_crud_example.service.ProductService.saveProducts(..))", returning = "products")
+        public void afterSaveAll(Collection<?> products) {
+            saveAllRows.record(products.size());
+        }
+    }
+}
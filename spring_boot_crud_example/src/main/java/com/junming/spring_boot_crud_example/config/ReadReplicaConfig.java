@@ -0,0 +1,135 @@
+package com.junming.spring_boot_crud_example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Primary/replica routing, switched on with product.datasource.routing.enabled=true.
+ *
+ * Writes, and reads not marked @ReplicaRead, go to spring.datasource.url as before. Reads marked @ReplicaRead are spread round robin over
+ * product.datasource.replica-urls (same username, password and spring.datasource.hikari.* settings as the primary, one Hikari pool each,
+ * connections read-only). Replaces Spring Boot's DataSource, so JPA, JdbcTemplate and the transaction manager all go through the routing.
+ */
+@Configuration(proxyBeanMethods = false)  //no @Bean method calls another, so no CGLIB subclass is needed
+@ConditionalOnProperty(name = "product.datasource.routing.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    public DataSourceRouting dataSourceRouting(@Value("${product.datasource.replica-urls}") List<String> replicaUrls,
+                                               @Value("${product.datasource.read-your-writes-window:5s}") Duration window,
+                                               @Value("${product.datasource.sticky-cookie-secret:}") String cookieSecret) {
+        return new DataSourceRouting(replicaUrls.size(), window, cookieSecret);
+    }
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${product.datasource.replica-urls}") List<String> replicaUrls,
+                                 DataSourceRouting routing,
+                                 Environment environment,
+                                 HikariPoolSizing sizing,
+                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = pool(properties, properties.determineUrl(), "primary", environment, sizing, meterRegistry);
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = pool(properties, replicaUrls.get(i).trim(), "replica-" + i, environment, sizing, meterRegistry);
+            replica.setReadOnly(true);  //a write that is wrongly routed here fails instead of silently diverging from the primary
+            replicas.add(replica);
+        }
+        RoutingDataSource routingDataSource = new RoutingDataSource(primary, replicas, routing);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public ReplicaReadAspect replicaReadAspect(DataSourceRouting routing) {
+        return new ReplicaReadAspect(routing);
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(DataSourceRouting routing) {
+        return new ReadYourWritesFilter(routing);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, String url, String name,
+                                         Environment environment, HikariPoolSizing sizing, ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));  //what Boot does for its own pool
+        pool.setPoolName(name);
+        sizing.size(pool);  //these pools are not beans, so the post processor never sees them
+        meterRegistry.ifAvailable(registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));  //hikaricp.* per pool
+        return pool;
+    }
+
+    /**
+     * runs every @ReplicaRead method with a replica picked for the current thread
+     */
+    @Aspect
+    public static class ReplicaReadAspect {
+
+        private final DataSourceRouting routing;
+
+        ReplicaReadAspect(DataSourceRouting routing) {
+            this.routing = routing;
+        }
+
+        @Around("@annotation(replicaRead)")
+        public Object route(ProceedingJoinPoint joinPoint, ReplicaRead replicaRead) throws Throwable {
+            if (!routing.enterReplica(replicaRead.fillsSharedCache())) {
+                return joinPoint.proceed();
+            }
+            try {
+                return joinPoint.proceed();
+            } finally {
+                routing.exitReplica();
+            }
+        }
+    }
+
+    /**
+     * reads the read-your-writes cookie into the request thread, and clears the routing state when the request is done
+     */
+    public static class ReadYourWritesFilter extends OncePerRequestFilter {
+
+        private final DataSourceRouting routing;
+
+        ReadYourWritesFilter(DataSourceRouting routing) {
+            this.routing = routing;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            routing.beginRequest(request);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                routing.endRequest();
+            }
+        }
+    }
+}
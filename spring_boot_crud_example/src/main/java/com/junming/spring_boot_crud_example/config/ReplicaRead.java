@@ -0,0 +1,24 @@
+package com.junming.spring_boot_crud_example.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read that may be served by a read replica when product.datasource.routing.enabled=true (see ReadReplicaConfig).
+ * Without routing it does nothing. Every database call made inside the method, including nested @ReplicaRead methods,
+ * goes to the same replica, so results read together are from one consistent point in time.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReplicaRead {
+
+    /**
+     * Set when the result is put in the cache shared by all clients. Such reads also stay on the primary for the read-your-writes window
+     * after any write on this instance, so a lagging replica cannot put a just-overwritten value back into the cache.
+     */
+    boolean fillsSharedCache() default false;
+}
@@ -0,0 +1,62 @@
+package com.junming.spring_boot_crud_example.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections from the primary or from replica i, as DataSourceRouting says for the current thread.
+ * A read-write transaction always gets the primary. Has to sit behind a LazyConnectionDataSourceProxy, so the connection is only
+ * looked up at the first statement, once the transaction (and its read-only flag) has been set up.
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingDataSource.class);
+
+    private final DataSourceRouting routing;
+
+    public RoutingDataSource(DataSource primary, List<DataSource> replicas, DataSourceRouting routing) {
+        this.routing = routing;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);  //the lookup key null means the primary
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isActualTransactionActive() && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            routing.markWrite();
+            return null;
+        }
+        return routing.currentReplica();
+    }
+
+    /**
+     * A replica that cannot hand out a connection is skipped for this call: the read goes to the primary instead of failing.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return super.getConnection();
+        } catch (SQLException e) {
+            Integer replica = routing.currentReplica();
+            if (replica == null) {
+                throw e;
+            }
+            log.warn("Read replica {} unavailable, reading from the primary", replica, e);
+            return getResolvedDefaultDataSource().getConnection();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.junming.spring_boot_crud_example.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import springfox.documentation.builders.ApiInfoBuilder;
@@ -10,7 +11,9 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
-@Configuration
+//product.docs.enabled=false (the fast-startup profile) leaves springfox out, and with it the scan of every handler method on startup
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "product.docs.enabled", havingValue = "true", matchIfMissing = true)
 @EnableSwagger2
 public class SwaggerConfig {
 
@@ -30,7 +33,7 @@ public class SwaggerConfig {
 		return new Docket(DocumentationType.SWAGGER_2)
 				.apiInfo(apiInfo())
 				.select()
-				.apis(RequestHandlerSelectors.any())
+				.apis(RequestHandlerSelectors.basePackage("com.junming.spring_boot_crud_example.controller"))  //our controllers, not actuator or the error controller
 				.paths(PathSelectors.any())
 				.build();
 	}
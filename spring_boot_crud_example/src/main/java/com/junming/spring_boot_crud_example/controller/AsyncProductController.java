@@ -0,0 +1,79 @@
+package com.junming.spring_boot_crud_example.controller;
+
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import com.junming.spring_boot_crud_example.service.ProductWriteBehind;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The CRUD routes of ProductController under /async, for clients that opt in to async execution.
+ * Returning a CompletableFuture tells Spring MVC to release the Tomcat thread at once and write the response when the future completes.
+ * The blocking ProductService calls run on the ProductAsyncExecutor instead.
+ * Only registered when product.async.enabled=true.
+ */
+@RestController
+@RequestMapping("/async")
+@ConditionalOnProperty(name = "product.async.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AsyncProductController {
+
+    @Autowired
+    private ProductService service;
+
+    @Autowired
+    private ProductAsyncExecutor executor;
+
+    @Autowired(required = false)
+    private ProductWriteBehind writeBehind;  //only with product.write-behind.enabled=true
+
+    @PostMapping("/addProduct")
+    public CompletableFuture<Product> addProduct(@RequestBody Product product){
+        if (writeBehind != null && product.getId() == null) {
+            return writeBehind.submit(product);  //no thread waits for the group commit at all
+        }
+        return executor.submit(() -> service.saveProduct(product));
+    }
+
+    @PostMapping("/addProducts")
+    public CompletableFuture<List<Product>> addProducts(@RequestBody List<Product> products){
+        return executor.submit(() -> service.saveProducts(products));
+    }
+
+    @GetMapping("/products")
+    public CompletableFuture<List<ProductView>> findAllProducts(){
+        return executor.submit(service::getProducts);
+    }
+
+    @GetMapping("/products/page")
+    public CompletableFuture<List<ProductView>> findProductsPage(@RequestParam(defaultValue = "0") int after,
+                                                                @RequestParam(defaultValue = "100") int limit){
+        return executor.submit(() -> service.getProductsPage(after, limit));
+    }
+
+    @GetMapping("/productById/{id}")
+    public CompletableFuture<ProductView> findProductById(@PathVariable int id){
+        return executor.submit(() -> service.getProductById(id));
+    }
+
+    @GetMapping("/product/{name}")
+    public CompletableFuture<ProductView> findProductByName(@PathVariable String name){
+        return executor.submit(() -> service.getProductByName(name));
+    }
+
+    @PutMapping("/update")
+    public CompletableFuture<Product> updateProduct(@RequestBody Product product){
+        return executor.submit(() -> service.updateProduct(product));
+    }
+
+    @DeleteMapping("/delete/{id}")
+    public CompletableFuture<String> deleteProduct(@PathVariable int id){
+        return executor.submit(() -> service.deleteProduct(id));
+    }
+}
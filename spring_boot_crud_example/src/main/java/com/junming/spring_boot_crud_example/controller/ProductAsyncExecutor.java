@@ -0,0 +1,109 @@
+package com.junming.spring_boot_crud_example.controller;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking ProductService calls off Tomcat's worker threads, so a slow database ties up these threads instead of the ones
+ * every other request needs.
+ *
+ * On a JDK with virtual threads (21+) every call gets its own virtual thread, otherwise a fixed pool is used.
+ * Either way at most max-in-flight calls run or wait at a time. By default that is twice the size of the Hikari connection pool,
+ * because more than that would only queue for a connection. Anything above the limit is rejected with 503 straight away.
+ */
+@Component
+@ConditionalOnProperty(name = "product.async.enabled", havingValue = "true")
+public class ProductAsyncExecutor {
+
+    private static final int DEFAULT_POOL_SIZE = 10;  //Hikari's own default maximumPoolSize
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+
+    public ProductAsyncExecutor(@Value("${product.async.max-in-flight:0}") int maxInFlight,
+                                ObjectProvider<DataSource> dataSource) {
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : 2 * poolSize(dataSource.getIfAvailable());
+        this.permits = new Semaphore(this.maxInFlight);
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        this.executor = virtualThreads != null ? virtualThreads : Executors.newFixedThreadPool(this.maxInFlight, new NamedThreadFactory());
+    }
+
+    /**
+     * runs the call on the executor, or throws 503 SERVICE_UNAVAILABLE when max-in-flight calls are already running
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        if (!permits.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many product requests in flight, retry later");
+        }
+        try {
+            return CompletableFuture.supplyAsync(call, executor).whenComplete((result, error) -> permits.release());
+        } catch (RuntimeException e) {  //executor shutting down
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        try {
+            //unwrap: with replica routing the DataSource is a proxy in front of the primary's pool
+            if (dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            //fall through to the default
+        }
+        return DEFAULT_POOL_SIZE;
+    }
+
+    /**
+     * The project still compiles for Java 8, so the JDK 21 factory method is looked up by reflection.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "product-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.junming.spring_boot_crud_example.controller;
+
+import com.junming.spring_boot_crud_example.dto.ProductChange;
+import com.junming.spring_boot_crud_example.dto.ProductChanges;
+import com.junming.spring_boot_crud_example.service.ProductChangeFeed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The product change feed over HTTP, for clients that poll /products to find out what changed. Two ways to follow it:
+ *
+ *  - long poll: GET /products/changes?after={cursor}. Answers at once when there are changes after the cursor, otherwise holds the
+ *    request until there are (or product.changes.long-poll-timeout passes, then with no changes). Without after it returns the current
+ *    cursor, to start from. Send next back as after for the following changes.
+ *  - server-sent events: GET /products/changes/stream. One event per change (name = type, id = cursor after it, data = the change),
+ *    starting after the Last-Event-ID header or the after parameter, else from now. A browser EventSource resumes by itself.
+ *
+ * A client that falls too far behind gets resync (a "resync" event, after which the stream is closed): it reloads /products and
+ * continues from the cursor it got. Both hold no thread while waiting. Open streams and waiting long polls together are capped at
+ * product.changes.max-subscribers; over that, new ones get 503.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductChangeController {
+
+    private static final int MAX_BATCH = 1000;
+    private static final int STREAM_BATCH = 100;
+
+    @Autowired
+    private ProductChangeFeed feed;
+
+    @Value("${product.changes.long-poll-timeout:25s}")
+    private Duration longPollTimeout;
+
+    @Value("${product.changes.stream-timeout:30m}")
+    private Duration streamTimeout;
+
+    @Value("${product.changes.max-subscribers:1000}")
+    private int maxSubscribers;
+
+    private final AtomicInteger subscribers = new AtomicInteger();  //open streams and waiting long polls
+
+    @GetMapping("/products/changes")
+    public DeferredResult<ProductChanges> changes(@RequestParam(required = false) String after,
+                                                  @RequestParam(defaultValue = "100") int limit){
+        int max = Math.max(1, Math.min(limit, MAX_BATCH));
+        DeferredResult<ProductChanges> result = new DeferredResult<>(longPollTimeout.toMillis());
+        ProductChanges changes = feed.read(after == null ? feed.cursor() : after, max);
+        if (after == null || hasNews(changes)) {
+            result.setResult(changes);
+            return result;
+        }
+        subscribe();  //only a poll that waits holds a subscription
+        ProductChangeFeed.Subscription subscription = feed.subscribe(() -> {
+            ProductChanges news = feed.read(after, max);
+            if (hasNews(news)) {
+                result.setResult(news);
+            }
+        });
+        result.onTimeout(() -> result.setResult(changes));  //nothing new: the same cursor again
+        result.onCompletion(() -> {  //after a result, a timeout or an error alike, once
+            subscription.cancel();
+            subscribers.decrementAndGet();
+        });
+        subscription.signal();  //for a change that came in between the read above and the subscription
+        return result;
+    }
+
+    @GetMapping(value = "/products/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                             @RequestParam(required = false) String after) throws IOException {
+        subscribe();
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        String[] cursor = {lastEventId != null ? lastEventId : after != null ? after : feed.cursor()};  //only used by the callback, one run at a time
+        ProductChangeFeed.Subscription[] subscription = new ProductChangeFeed.Subscription[1];
+        AtomicBoolean closed = new AtomicBoolean();
+        Runnable close = () -> {
+            if (closed.compareAndSet(false, true)) {
+                subscription[0].cancel();
+                subscribers.decrementAndGet();
+            }
+        };
+        subscription[0] = feed.subscribe(() -> send(emitter, cursor, close));
+        emitter.onCompletion(close);
+        emitter.onError(error -> close.run());
+        emitter.onTimeout(emitter::complete);  //the client reconnects with Last-Event-ID
+        emitter.send(SseEmitter.event().comment("following after " + cursor[0]));  //sends the headers now, not with the first change
+        subscription[0].signal();
+        return emitter;
+    }
+
+    //counts one more subscriber, or throws 503 SERVICE_UNAVAILABLE when max-subscribers are already waiting
+    private void subscribe() {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many change feed subscribers");
+        }
+    }
+
+    //sends every change after cursor[0]; after a resync or a failed send (the client is gone) the stream is closed
+    private void send(SseEmitter emitter, String[] cursor, Runnable close) {
+        try {
+            ProductChanges changes;
+            do {
+                changes = feed.read(cursor[0], STREAM_BATCH);
+                if (changes.isResync()) {
+                    emitter.send(SseEmitter.event().name("resync").id(changes.getNext()).data(changes));
+                    emitter.complete();
+                    close.run();
+                    return;
+                }
+                for (ProductChange change : changes.getChanges()) {
+                    emitter.send(SseEmitter.event().name(change.getType().name()).id(feed.cursorAfter(change)).data(change));
+                }
+                cursor[0] = changes.getNext();
+            } while (changes.getChanges().size() == STREAM_BATCH);
+        } catch (IOException | IllegalStateException e) {  //IllegalStateException: the emitter was completed meanwhile
+            emitter.completeWithError(e);
+            close.run();
+        }
+    }
+
+    private static boolean hasNews(ProductChanges changes) {
+        return changes.isResync() || !changes.getChanges().isEmpty();
+    }
+}
@@ -1,22 +1,78 @@
 package com.junming.spring_boot_crud_example.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.junming.spring_boot_crud_example.config.ReplicaRead;
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+import com.junming.spring_boot_crud_example.dto.ImportResult;
+import com.junming.spring_boot_crud_example.dto.InventoryReport;
+import com.junming.spring_boot_crud_example.dto.ProductPatch;
+import com.junming.spring_boot_crud_example.dto.ProductSearch;
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import com.junming.spring_boot_crud_example.dto.ProductView;
 import com.junming.spring_boot_crud_example.entity.Product;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import com.junming.spring_boot_crud_example.service.InventoryAnalytics;
+import com.junming.spring_boot_crud_example.service.ProductCatalogService;
 import com.junming.spring_boot_crud_example.service.ProductService;
+import com.junming.spring_boot_crud_example.service.ProductWriteBehind;
+import com.junming.spring_boot_crud_example.service.QuantityUpdate;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The class is flagged as a @RestController, meaning it is ready for use by Spring MVC to handle web requests.
  * This controller is used to execute basic CRUD functions of Product.
+ * Spring MVC only: in the reactive profile ReactiveProductController serves the CRUD routes instead.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductController {
 
+    private static final String TEXT_CSV_VALUE = "text/csv";  //Spring's MediaType has no constant for it
+
     @Autowired  //automatic dependency injection
     private ProductService service;
 
+    @Autowired
+    private ProductCatalogService catalog;  //streaming CSV / NDJSON import and export
+
+    @Autowired
+    private InventoryAnalytics analytics;  //stock aggregates from a columnar in-memory snapshot
+
+    @Autowired(required = false)
+    private ProductWriteBehind writeBehind;  //only with product.write-behind.enabled=true
+
+    @Autowired
+    private ObjectMapper mapper;  //the same ObjectMapper Spring MVC uses, so streamed rows look exactly like the List responses
+
+    //Cache-Control of the polled reads, one property per endpoint. The default no-cache lets clients keep a copy but makes them
+    //revalidate it on every use, which the ETags below turn into a cheap 304.
+    @Value("${product.http.cache-control.products:no-cache}")
+    private String productsCacheControl;
+
+    @Value("${product.http.cache-control.product-by-id:no-cache}")
+    private String productByIdCacheControl;
+
+    @Value("${product.http.cache-control.product-by-name:no-cache}")
+    private String productByNameCacheControl;
+
     @RequestMapping("/")  // @PostMapping and @GetMapping are specialized version of @RequestMapping
     public @ResponseBody String greeting() {
         return "Hello to Product RestAPI";
@@ -25,6 +81,10 @@ public class ProductController {
     @PostMapping("/addProduct")
     public Product addProduct(@RequestBody Product product){
         //RequestBody annotation maps the HttpRequest body to a transfer or domain object
+        if (writeBehind != null && product.getId() == null) {
+            //group committed with the other new products of the next few milliseconds; answered once its batch is committed
+            return await(writeBehind.submit(product));
+        }
         return service.saveProduct(product);
     }
 
@@ -36,20 +96,128 @@ public class ProductController {
 
     //@GetMapping maps /products to the findAllProducts() method. When invoked from a browser or by using curl on the command line, the method returns pure text.
     //That is because @RestController combines @Controller and @ResponseBody, two annotations that results in web requests returning data rather than a view.
+    //Conditional GET: a client sending back the ETag it got (If-None-Match) receives 304 Not Modified as long as no product changed,
+    //and only the one-row catalogVersion query runs. No Last-Modified here: a delete does not make anything newer, so it could not be detected.
     @GetMapping("/products")
-    public List<Product> findAllProducts(){
-        return service.getProducts();
+    @ReplicaRead  //with replica routing on, the version and the products below are read from the same replica, so the ETag matches the body
+    public ResponseEntity<List<ProductView>> findAllProducts(WebRequest request){
+        //read before the products: if a write slips in between, the client holds an older ETag with newer data and just refetches next time
+        CatalogVersion version = service.getCatalogVersion();
+        if (request.checkNotModified(version.toETag())) {
+            return null;  //checkNotModified has already set the 304 status and the ETag header
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, productsCacheControl)
+                .body(service.getProducts());
+    }
+
+    //Keyset pagination: pass the id of the last product you received as 'after' to get the next page.
+    @GetMapping("/products/page")
+    public List<ProductView> findProductsPage(@RequestParam(defaultValue = "0") int after,
+                                              @RequestParam(defaultValue = "100") int limit){
+        return service.getProductsPage(after, limit);
+    }
+
+    //e.g. /products/search?namePrefix=ip&minPrice=100&maxPrice=900&minQuantity=1&sort=price&direction=DESC&limit=20
+    //Every parameter is optional. At most 1000 products are returned.
+    @GetMapping("/products/search")
+    public List<ProductView> searchProducts(ProductSearch search){  //query parameters are bound to the fields of ProductSearch
+        if (!ProductSearch.SORTABLE.contains(search.getSort())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be one of " + ProductSearch.SORTABLE);
+        }
+        return service.searchProducts(search);
+    }
+
+    //Type-ahead: e.g. /products/suggest?q=iph&limit=10. Answered from memory, names starting with q first, then close (fuzzy) matches.
+    @GetMapping("/products/suggest")
+    public List<ProductSuggestion> suggestProducts(@RequestParam String q, @RequestParam(defaultValue = "10") int limit){
+        return service.suggestProducts(q, limit);
+    }
+
+    @GetMapping("/products/suggest/stats")
+    public Map<String, Object> suggestStats(){
+        return service.getNameIndexStats();
     }
 
+    //Streams one JSON object per line (NDJSON). Rows are written as they come off the database cursor, so memory stays flat.
+    @GetMapping(value = "/products/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamProductsNdjson(){
+        return out -> service.forEachProduct(product -> {
+            try {
+                out.write(mapper.writeValueAsBytes(product));  //writeValue(out, ..) would close the response stream after the first row
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    //Same stream as CSV, with a header line. This is also the file format POST /products/import accepts.
+    @GetMapping(value = "/products/stream", produces = TEXT_CSV_VALUE)
+    public StreamingResponseBody streamProductsCsv(){
+        return catalog::exportCsv;
+    }
+
+    //Nightly catalog syncs: the body is read record by record while earlier records are already being written, instead of being bound to one big List first.
+    //Returns how many products were imported and which lines failed.
+    @PostMapping(value = "/products/import", consumes = TEXT_CSV_VALUE)
+    public ImportResult importProductsCsv(InputStream body) throws IOException {  //an InputStream parameter is the raw request body
+        return catalog.importCsv(body);
+    }
+
+    @PostMapping(value = "/products/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ImportResult importProductsNdjson(InputStream body) throws IOException {
+        return catalog.importNdjson(body);
+    }
+
+    //Same stream as above, but written as a single JSON array for clients that cannot read NDJSON.
+    @GetMapping(value = "/products/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public StreamingResponseBody streamProductsJson(){
+        return out -> {
+            JsonGenerator generator = mapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);  //the servlet container owns the response stream
+            generator.writeStartArray();
+            service.forEachProduct(product -> {
+                try {
+                    generator.writeObject(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+            generator.close();
+        };
+    }
+
+    //Both lookups go through the cache, so a client revalidating an unchanged product gets its 304 without a database query.
     @GetMapping("/productById/{id}")
-    public Product findProductById(@PathVariable int id){
-        return service.getProductById(id);
+    public ResponseEntity<ProductView> findProductById(@PathVariable int id){
+        return conditional(service.getProductById(id), productByIdCacheControl);
     }
 
     @GetMapping("/product/{name}")
-    public Product findProductByName(@PathVariable String name)
+    public ResponseEntity<ProductView> findProductByName(@PathVariable String name)
     {
-        return service.getProductByName(name);
+        return conditional(service.getProductByName(name), productByNameCacheControl);
+    }
+
+    //hit, miss and eviction counters of the id/name lookup cache
+    @GetMapping("/products/cache/stats")
+    public Map<String, Object> cacheStats(){
+        return service.getCacheStats();
+    }
+
+    //Total stock value, low-stock counts and a price histogram in one small response, instead of every product to the client.
+    //Served from a snapshot that is at most product.analytics.refresh-interval old (asOf in the response).
+    @GetMapping("/products/analytics")
+    public InventoryReport inventoryReport(@RequestParam(required = false) Integer lowStock,
+                                           @RequestParam(defaultValue = "10") int buckets){
+        return analytics.report(lowStock, buckets);
+    }
+
+    @GetMapping("/products/analytics/snapshot")
+    public Map<String, Object> inventorySnapshotStats(){
+        return analytics.stats();
     }
 
     @PutMapping("/update")
@@ -58,12 +226,115 @@ public class ProductController {
         return service.updateProduct(product);
     }
 
+    //Partial update: only the fields in the body are changed. Send the version you read to make sure nobody changed the product since.
+    //204 when updated, 409 when the product is at another version, 404 when it does not exist.
+    @PatchMapping("/product/{id}")
+    public ResponseEntity<Void> patchProduct(@PathVariable int id, @RequestBody ProductPatch patch)
+    {
+        if (service.patchProduct(id, patch) == 1) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.status(service.productExists(id) ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND).build();
+    }
+
+    //Many partial updates in one request. Every patch needs its id. Returns 1 (updated) or 0 (missing or other version) per patch.
+    @PatchMapping("/products")
+    public int[] patchProducts(@RequestBody List<ProductPatch> patches)
+    {
+        if (patches.stream().anyMatch(patch -> patch.getId() == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every patch needs an id");
+        }
+        return service.patchProducts(patches);
+    }
+
+    //Adds to / takes from the stock without sending the whole product, and without losing concurrent orders.
+    //204 when applied, 202 when queued for a hot product, 409 when there is not enough stock, 404 when the product does not exist.
+    //400 unless by > 0: a negative increment would take stock out without the stock check, and -Integer.MIN_VALUE overflows.
+    @PostMapping("/product/{id}/increment")
+    public ResponseEntity<Void> incrementQuantity(@PathVariable int id, @RequestParam(defaultValue = "1") int by)
+    {
+        return adjustQuantity(id, positive(by));
+    }
+
+    @PostMapping("/product/{id}/decrement")
+    public ResponseEntity<Void> decrementQuantity(@PathVariable int id, @RequestParam(defaultValue = "1") int by)
+    {
+        return adjustQuantity(id, -positive(by));
+    }
+
+    private static int positive(int by)
+    {
+        if (by <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be greater than 0");
+        }
+        return by;
+    }
+
+    private ResponseEntity<Void> adjustQuantity(int id, int delta)
+    {
+        QuantityUpdate update = service.adjustQuantity(id, delta);
+        if (update == QuantityUpdate.APPLIED) {
+            return ResponseEntity.noContent().build();
+        }
+        if (update == QuantityUpdate.QUEUED) {
+            return ResponseEntity.accepted().build();
+        }
+        return ResponseEntity.status(service.productExists(id) ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND).build();
+    }
+
     @DeleteMapping("/delete/{id}")
     public String deleteProduct(@PathVariable int id)
     {
         return service.deleteProduct(id);
     }
-}
 
-//@RequestBody annotation binds the content sent in (POST / PUT) request body with the annotated variable. Since there is no 'body' part in GET request, spring throws HttpMessageNotReadableException to indicate the same.
-//As a general rule, you can only use @RequestBody for the requests which can have 'body' content e.g. POST or PUT.
\ No newline at end of file
+    //Deletes all products in the list with a few set-based statements. Returns how many were deleted.
+    //POST rather than DELETE because many HTTP clients and proxies drop the body of a DELETE.
+    @PostMapping("/deleteProducts")
+    public int deleteProducts(@RequestBody List<Integer> ids)
+    {
+        return service.deleteProducts(ids);
+    }
+
+    //Deletes every product with from <= id <= to. Returns how many were deleted. 400 when from > to.
+    @DeleteMapping("/deleteProducts")
+    public int deleteProductRange(@RequestParam int from, @RequestParam int to)
+    {
+        if (from > to) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be greater than to");
+        }
+        return service.deleteProductRange(from, to);
+    }
+
+    /**
+     * A strong ETag from id and version (every write bumps the version) plus Last-Modified. Spring compares them with
+     * If-None-Match / If-Modified-Since and turns a match into 304 Not Modified without a body.
+     */
+    private static ResponseEntity<ProductView> conditional(ProductView product, String cacheControl) {
+        if (product == null) {
+            return ResponseEntity.ok().build();  //as before: an unknown product is an empty 200
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag("\"" + product.getId() + "-" + product.getVersion() + "\"")
+                .header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (product.getLastModified() != null) {
+            response.lastModified(product.getLastModified());
+        }
+        return response.body(product);
+    }
+
+    //waits for the future and rethrows what it failed with, so errors are answered as if the call had been synchronous
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for the write");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
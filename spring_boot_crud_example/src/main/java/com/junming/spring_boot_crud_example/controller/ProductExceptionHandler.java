@@ -0,0 +1,23 @@
+package com.junming.spring_boot_crud_example.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Errors every product route answers the same way, for ProductController and AsyncProductController alike.
+ */
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductExceptionHandler {
+
+    //A save or update carried an older version than the stored row, or lost the race against a concurrent write.
+    //409 like PATCH /product/{id}: read the product again and retry.
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void versionConflict() {
+    }
+}
@@ -0,0 +1,98 @@
+package com.junming.spring_boot_crud_example.controller;
+
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ReactiveProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The CRUD routes of ProductController, served by WebFlux in the reactive profile (spring.main.web-application-type=reactive).
+ * No handler method blocks: each returns a Mono or Flux at once, and Netty's few event loop threads write the response when the
+ * database has answered. So a request waiting on MySQL costs a few objects instead of a thread and its stack.
+ *
+ * GET /products with Accept: application/x-ndjson streams one product per line with backpressure: rows are only fetched as fast as
+ * the client reads them. As application/json the list is collected first, as in ProductController.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductController {
+
+    @Autowired
+    private ReactiveProductService service;
+
+    @Value("${product.http.cache-control.product-by-id:no-cache}")
+    private String productByIdCacheControl;
+
+    @Value("${product.http.cache-control.product-by-name:no-cache}")
+    private String productByNameCacheControl;
+
+    @RequestMapping("/")
+    public Mono<String> greeting() {
+        return Mono.just("Hello to Product RestAPI");
+    }
+
+    @PostMapping("/addProduct")
+    public Mono<ProductView> addProduct(@RequestBody Product product){
+        return service.saveProduct(product);
+    }
+
+    //a Flux body is decoded one product at a time, so each is saved while the rest of the array is still arriving
+    @PostMapping("/addProducts")
+    public Flux<ProductView> addProducts(@RequestBody Flux<Product> products){
+        return service.saveProducts(products);
+    }
+
+    @GetMapping(value = "/products", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductView> findAllProducts(){
+        return service.getProducts();
+    }
+
+    @GetMapping("/products/page")
+    public Flux<ProductView> findProductsPage(@RequestParam(defaultValue = "0") int after,
+                                              @RequestParam(defaultValue = "100") int limit){
+        return service.getProductsPage(after, limit);
+    }
+
+    @GetMapping("/productById/{id}")
+    public Mono<ResponseEntity<ProductView>> findProductById(@PathVariable int id){
+        return conditional(service.getProductById(id), productByIdCacheControl);
+    }
+
+    @GetMapping("/product/{name}")
+    public Mono<ResponseEntity<ProductView>> findProductByName(@PathVariable String name){
+        return conditional(service.getProductByName(name), productByNameCacheControl);
+    }
+
+    @PutMapping("/update")
+    public Mono<ProductView> updateProduct(@RequestBody Product product){
+        return service.updateProduct(product);
+    }
+
+    @DeleteMapping("/delete/{id}")
+    public Mono<String> deleteProduct(@PathVariable int id){
+        return service.deleteProduct(id);
+    }
+
+    /**
+     * the same ETag, Last-Modified and empty 200 for an unknown product as ProductController; WebFlux answers a matching If-None-Match with 304
+     */
+    private static Mono<ResponseEntity<ProductView>> conditional(Mono<ProductView> product, String cacheControl) {
+        return product.map(view -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .eTag("\"" + view.getId() + "-" + view.getVersion() + "\"")
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl);
+            if (view.getLastModified() != null) {
+                response.lastModified(view.getLastModified());
+            }
+            return response.body(view);
+        }).defaultIfEmpty(ResponseEntity.ok().build());
+    }
+}
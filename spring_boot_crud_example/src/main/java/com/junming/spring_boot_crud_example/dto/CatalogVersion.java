@@ -0,0 +1,22 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.Value;
+
+/**
+ * Fingerprint of the whole product table, read with one aggregate query (ProductRepository.catalogVersion).
+ * Any insert, update or delete changes it, so it can stand in for the contents of GET /products in an ETag.
+ */
+@Value
+public class CatalogVersion {
+
+    long count;
+    Integer maxId;     //null when the table is empty
+    Long versionSum;   //null when the table is empty
+
+    /**
+     * A weak ETag: the list is gzip-compressed, and a strong ETag promises byte-identical bodies across content encodings.
+     */
+    public String toETag() {
+        return "W/\"catalog-" + count + "-" + maxId + "-" + versionSum + "\"";
+    }
+}
@@ -0,0 +1,24 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Outcome of a catalog import. Lines that could not be parsed or written are counted in failed,
+ * and the first of them are listed in errors with their line number, so the file can be fixed and re-sent.
+ */
+@Value
+public class ImportResult {
+
+    long imported;
+    long failed;
+    List<LineError> errors;
+
+    @Value
+    public static class LineError {
+
+        long line;  //1-based, counting the header line of a CSV file
+        String message;
+    }
+}
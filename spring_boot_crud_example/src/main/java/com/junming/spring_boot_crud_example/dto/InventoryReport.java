@@ -0,0 +1,36 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The answer of GET /products/analytics: stock aggregates over every product, computed from the in-memory inventory snapshot.
+ * asOf is when the snapshot was last found to match the database; writes after it are not in the numbers yet.
+ * A product without a quantity counts as 0 in stock; one without a price is left out of the stock value and the histogram.
+ */
+@Value
+public class InventoryReport {
+
+    Instant asOf;
+    long products;
+    long totalQuantity;
+    double totalStockValue;      //sum of price * quantity
+    int lowStockThreshold;
+    long lowStockCount;          //quantity <= lowStockThreshold
+    long outOfStockCount;        //quantity <= 0
+    long unpricedCount;
+    List<PriceBucket> priceHistogram;
+
+    /**
+     * products with from <= price < to (the last bucket includes to)
+     */
+    @Value
+    public static class PriceBucket {
+
+        double from;
+        double to;
+        long count;
+    }
+}
@@ -0,0 +1,23 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.Value;
+
+/**
+ * One write to the product table, as published on the change feed (see ProductChangeFeed).
+ * offset numbers the changes of this instance without gaps, so a client can tell it has missed none.
+ */
+@Value
+public class ProductChange {
+
+    long offset;
+    Type type;
+    Integer id;           //null for RELOAD
+    ProductView product;  //the product as saved, only for SAVED
+
+    public enum Type {
+        SAVED,    //created or overwritten; product holds the new state
+        CHANGED,  //some fields changed (patch, stock adjustment); fetch /productById/{id} if you need them
+        DELETED,
+        RELOAD    //a write whose rows are not known one by one (range delete): fetch /products again
+    }
+}
@@ -0,0 +1,18 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A page of the change feed. Pass next as after to get the changes that follow.
+ * resync means the changes after the given cursor are no longer kept (the client fell too far behind, or the cursor is from
+ * before a restart): fetch /products again, then continue from next.
+ */
+@Value
+public class ProductChanges {
+
+    List<ProductChange> changes;
+    String next;
+    boolean resync;
+}
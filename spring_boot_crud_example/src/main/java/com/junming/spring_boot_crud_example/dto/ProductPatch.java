@@ -0,0 +1,24 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Body of a partial update. Only the fields that are set are changed, null means "leave as it is".
+ * If version is set, the update only applies while the row is still at that version (optimistic locking).
+ * id is only read by the batched PATCH /products, the single PATCH takes it from the path.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPatch {
+
+    private Integer id;
+    private String name;
+    private Integer quantity;
+    private Double price;
+    private Long version;
+}
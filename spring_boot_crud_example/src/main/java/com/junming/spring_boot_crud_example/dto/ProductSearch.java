@@ -0,0 +1,36 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filters of GET /products/search, bound from the query string. Every filter is optional and they are combined with AND.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSearch {
+
+    /** the only fields results can be sorted by; each of them is the leading column of an index on Product_TBL */
+    public static final List<String> SORTABLE = Collections.unmodifiableList(Arrays.asList("id", "name", "price", "quantity"));
+
+    private String namePrefix;
+    private Double minPrice;
+    private Double maxPrice;
+    private Integer minQuantity;
+    private Integer maxQuantity;
+    @Builder.Default
+    private String sort = "id";
+    @Builder.Default
+    private Sort.Direction direction = Sort.Direction.ASC;
+    @Builder.Default
+    private int limit = 100;
+}
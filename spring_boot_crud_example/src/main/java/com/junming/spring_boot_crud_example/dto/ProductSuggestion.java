@@ -0,0 +1,13 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import lombok.Value;
+
+/**
+ * One type-ahead hit from GET /products/suggest: just enough to show the name and fetch the product by id when it is picked.
+ */
+@Value
+public class ProductSuggestion {
+
+    Integer id;
+    String name;
+}
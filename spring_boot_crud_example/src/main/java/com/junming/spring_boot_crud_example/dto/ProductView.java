@@ -0,0 +1,32 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.junming.spring_boot_crud_example.entity.Product;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Read-only projection of a Product row.
+ * Spring Data fills it with a constructor expression ("select new ...ProductView(...)"), so no managed entity is created for it:
+ * no persistence context entry, no dirty-checking snapshot, nothing to flush.
+ *
+ * It is also what the GET endpoints return instead of the entity. Being immutable, one instance can be cached and handed to every
+ * caller without copying, and it is written to JSON by ProductViewSerializer instead of by reflection.
+ */
+@Value   //lombok: all fields private final, getters, all-args constructor, equals/hashCode and toString
+@JsonSerialize(using = ProductViewSerializer.class)
+public class ProductView {
+
+    Integer id;
+    String name;
+    Integer quantity;
+    Double price;
+    long version;
+    Instant lastModified;
+
+    public static ProductView of(Product product) {
+        return new ProductView(product.getId(), product.getName(), product.getQuantity(), product.getPrice(), product.getVersion(),
+                product.getLastModified());
+    }
+}
@@ -0,0 +1,65 @@
+package com.junming.spring_boot_crud_example.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a ProductView field by field, instead of Jackson's bean serializer finding the getters by reflection and calling them one
+ * property writer at a time. The field names are encoded (quoted and escaped) once, up front.
+ * The output is the same JSON the entity produced: same field order, nulls written as null, lastModified as an ISO-8601 string
+ * (or a timestamp when WRITE_DATES_AS_TIMESTAMPS is switched on).
+ */
+public class ProductViewSerializer extends StdSerializer<ProductView> {
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString QUANTITY = new SerializedString("quantity");
+    private static final SerializedString PRICE = new SerializedString("price");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString LAST_MODIFIED = new SerializedString("lastModified");
+
+    public ProductViewSerializer() {
+        super(ProductView.class);
+    }
+
+    @Override
+    public void serialize(ProductView view, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(view);
+        generator.writeFieldName(ID);
+        if (view.getId() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(view.getId());
+        }
+        generator.writeFieldName(NAME);
+        generator.writeString(view.getName());  //writes null for a null name
+        generator.writeFieldName(QUANTITY);
+        if (view.getQuantity() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(view.getQuantity());
+        }
+        generator.writeFieldName(PRICE);
+        if (view.getPrice() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(view.getPrice());
+        }
+        generator.writeFieldName(VERSION);
+        generator.writeNumber(view.getVersion());
+        generator.writeFieldName(LAST_MODIFIED);
+        if (view.getLastModified() == null) {
+            generator.writeNull();
+        } else if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+            provider.defaultSerializeValue(view.getLastModified(), generator);  //leave the timestamp formats to the JavaTimeModule
+        } else {
+            generator.writeString(view.getLastModified().toString());  //ISO-8601, exactly what the JavaTimeModule writes
+        }
+        generator.writeEndObject();
+    }
+}
@@ -4,15 +4,22 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.*;
+import java.time.Instant;
 
 
 @Data   //this annotation is lombok getter, setter and other boilerplate codes
 @AllArgsConstructor  //automatically generate a Product constructor with all arguments
 @NoArgsConstructor    //automatically generate a Product constructor with no arguments
 @Entity   //representing data that can be persisted to the database
-@Table(name = "Product_TBL")
+@Table(name = "Product_TBL", indexes = {
+        @Index(name = "idx_product_name", columnList = "name"),  //not unique: existing catalogs may already hold duplicate names
+        @Index(name = "idx_product_price_quantity", columnList = "price, quantity"),  //price range (+ quantity) filters and price sorting in /products/search
+        @Index(name = "idx_product_quantity_price", columnList = "quantity, price")  //quantity threshold (+ price) filters and quantity sorting
+})
 @Builder
 public class Product {
 
@@ -25,4 +32,22 @@ public class Product {
     private Integer quantity;
     private Double price;
 
+    //Optimistic locking: every update bumps the version, and an update carrying an older version fails instead of overwriting newer data.
+    //A primitive (not Long) so Spring Data still decides new vs existing by the id alone. The default lets ddl-auto add the column to a filled table.
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
+    //When the row last changed, for the Last-Modified header. Set by Hibernate on insert and update, and by hand in every statement
+    //that bypasses it (ProductRepository, ProductBulkRepository), always from the JVM clock. Null for rows older than the column.
+    @UpdateTimestamp
+    private Instant lastModified;
+
+    /**
+     * a product at version 0, the usual way to create one in code and tests
+     */
+    public Product(Integer id, String name, Integer quantity, Double price) {
+        this(id, name, quantity, price, 0L, null);
+    }
 }
@@ -0,0 +1,248 @@
+package com.junming.spring_boot_crud_example.repository;
+
+import com.junming.spring_boot_crud_example.dto.ProductPatch;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk insert and update paths for products.
+ * Product.id is an IDENTITY column, and Hibernate turns off JDBC insert batching for IDENTITY ids because it needs each generated id
+ * straight after its INSERT. So instead of going through the EntityManager, this class sends plain JDBC batches and reads the
+ * generated ids back from the driver. Nothing is kept in a persistence context, so memory does not grow with the size of the load.
+ * (On MySQL the url needs rewriteBatchedStatements=true, otherwise the driver still sends one INSERT per row.)
+ */
+@Repository
+public class ProductBulkRepository {
+
+    private static final String INSERT_SQL = "insert into product_tbl (name, quantity, price, version, last_modified) values (?, ?, ?, ?, ?)";
+    //the JDBC twin of ProductRepository.patch. last_modified is always bound from the JVM clock, like @UpdateTimestamp does,
+    //never the database's current_timestamp: Last-Modified and If-Modified-Since must compare times from one clock.
+    private static final String PATCH_SQL = "update product_tbl set name = coalesce(?, name), quantity = coalesce(?, quantity), "
+            + "price = coalesce(?, price), version = version + 1, last_modified = ? where id = ? and (? is null or version = ?)";
+    private static final String EXISTING_IDS_SQL = "select id from product_tbl where id in (:ids) for update";
+    private static final String DELETE_IDS_SQL = "delete from product_tbl where id in (:ids)";
+    private static final String DELETE_RANGE_SQL = "delete from product_tbl where id between ? and ?";
+    //the id of the chunkSize-th existing product from ? on, i.e. where the next range chunk ends. Walks the primary key, not the table.
+    private static final String RANGE_CHUNK_END_SQL = "select id from product_tbl where id between ? and ? order by id limit 1 offset ?";
+    private static final String QUANTITIES_SQL = "select id, coalesce(quantity, 0) from product_tbl where id in (:ids)";
+    //floored at 0: the flushed deltas were accepted against a budget, but the row may have been lowered directly since
+    private static final String ADJUST_QUANTITY_SQL = "update product_tbl set quantity = greatest(coalesce(quantity, 0) + ?, 0), version = version + 1, "
+            + "last_modified = ? where id = ?";
+    private static final String STOCK_SQL = "select quantity, price from product_tbl";
+    private static final int STOCK_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;  //expands a collection parameter into "in (?, ?, ...)"
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;   //rows per executeBatch() round trip
+    private final int chunkSize;   //rows per transaction
+
+    public ProductBulkRepository(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${product.bulk.batch-size:500}") int batchSize,
+                                 @Value("${product.bulk.chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Inserts the products in chunks, one transaction per chunk, and sets the generated id on every product.
+     * If a chunk fails, the chunks before it stay committed and the exception is rethrown.
+     */
+    public List<Product> insertAll(List<Product> products) {
+        for (int from = 0; from < products.size(); from += chunkSize) {
+            List<Product> chunk = products.subList(from, Math.min(from + chunkSize, products.size()));
+            transactionTemplate.executeWithoutResult(status -> insertChunk(chunk));
+        }
+        return products;
+    }
+
+    /**
+     * Applies many partial updates as JDBC batches, one transaction per chunk.
+     * Returns the rows changed per patch, in order: 0 means the id does not exist or the row is at another version.
+     */
+    public int[] patchAll(List<ProductPatch> patches) {
+        int[] updated = new int[patches.size()];
+        for (int from = 0; from < patches.size(); from += chunkSize) {
+            List<ProductPatch> chunk = patches.subList(from, Math.min(from + chunkSize, patches.size()));
+            int offset = from;
+            Timestamp now = Timestamp.from(Instant.now());
+            transactionTemplate.executeWithoutResult(status -> {
+                int[][] counts = jdbcTemplate.batchUpdate(PATCH_SQL, chunk, batchSize, (statement, patch) -> {
+                    statement.setString(1, patch.getName());
+                    statement.setObject(2, patch.getQuantity(), Types.INTEGER);
+                    statement.setObject(3, patch.getPrice(), Types.DOUBLE);
+                    statement.setTimestamp(4, now);
+                    statement.setInt(5, patch.getId());
+                    statement.setObject(6, patch.getVersion(), Types.BIGINT);
+                    statement.setObject(7, patch.getVersion(), Types.BIGINT);
+                });
+                int i = offset;
+                for (int[] batch : counts) {
+                    for (int count : batch) {
+                        //some drivers only report SUCCESS_NO_INFO (-2) for batched statements
+                        updated[i++] = count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                    }
+                }
+            });
+        }
+        return updated;
+    }
+
+    /**
+     * Deletes the products with these ids with set-based DELETE ... WHERE id IN (...) statements, one per chunk, each in its own transaction.
+     * Only the ids are read (and locked) first, no rows. Returns the ids that were deleted: ids that do not exist are skipped.
+     */
+    public List<Integer> deleteAll(Collection<Integer> ids) {
+        List<Integer> list = new ArrayList<>(ids);
+        List<Integer> deleted = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += chunkSize) {
+            List<Integer> chunk = list.subList(from, Math.min(from + chunkSize, list.size()));
+            deleted.addAll(transactionTemplate.execute(status -> {
+                List<Integer> existing = namedJdbcTemplate.queryForList(EXISTING_IDS_SQL, Collections.singletonMap("ids", chunk), Integer.class);
+                if (!existing.isEmpty()) {
+                    namedJdbcTemplate.update(DELETE_IDS_SQL, Collections.singletonMap("ids", existing));
+                }
+                return existing;
+            }));
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes every product with fromId <= id <= toId, chunkSize rows per statement and transaction,
+     * so a large range never holds its locks (or fills the undo log) in one huge transaction.
+     * Each chunk ends at the chunkSize-th id that exists, so the number of statements follows the rows, not the width of the range.
+     */
+    public int deleteRange(int fromId, int toId) {
+        int deleted = 0;
+        long low = fromId;  //long: the id after toId must not overflow near Integer.MAX_VALUE
+        while (low <= toId) {
+            List<Integer> end = jdbcTemplate.queryForList(RANGE_CHUNK_END_SQL, Integer.class, low, toId, chunkSize - 1);
+            long high = end.isEmpty() ? toId : end.get(0);  //fewer than chunkSize rows left: the last chunk takes the rest
+            long chunkLow = low;
+            deleted += transactionTemplate.execute(status -> jdbcTemplate.update(DELETE_RANGE_SQL, chunkLow, high));
+            low = high + 1;
+        }
+        return deleted;
+    }
+
+    /**
+     * the quantity (0 for null) of every product with one of these ids; ids that do not exist are missing from the map
+     */
+    public Map<Integer, Integer> quantities(Collection<Integer> ids) {
+        return quantities(QUANTITIES_SQL, ids);
+    }
+
+    /**
+     * Adds many quantity deltas in one transaction, as JDBC batches. Used to flush coalesced deltas, which were already accepted,
+     * so a quantity that would go below 0 is set to 0 instead. The rows are locked and read first: returns the quantity each product
+     * had before its delta, and ids that no longer exist are left out of the map and not written.
+     */
+    public Map<Integer, Integer> adjustQuantities(Map<Integer, Long> deltas) {
+        return transactionTemplate.execute(status -> {
+            Map<Integer, Integer> before = quantities(QUANTITIES_SQL + " for update", deltas.keySet());
+            List<Map.Entry<Integer, Long>> entries = new ArrayList<>(deltas.entrySet());
+            entries.removeIf(entry -> !before.containsKey(entry.getKey()));
+            Timestamp now = Timestamp.from(Instant.now());
+            jdbcTemplate.batchUpdate(ADJUST_QUANTITY_SQL, entries, batchSize, (statement, entry) -> {
+                statement.setLong(1, entry.getValue());
+                statement.setTimestamp(2, now);
+                statement.setInt(3, entry.getKey());
+            });
+            return before;
+        });
+    }
+
+    /**
+     * Reads quantity and price of every product, in no particular order, and hands them to the handler row by row as primitives:
+     * no entities, no boxing. A null quantity arrives as 0 (as in adjustQuantities), a null price as NaN.
+     */
+    public void scanStock(StockRowHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(STOCK_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(STOCK_FETCH_SIZE);  //MySQL streams in chunks with useCursorFetch=true instead of reading the table at once
+            return statement;
+        }, (RowCallbackHandler) row -> {
+            int quantity = row.getInt(1);  //0 for null
+            double price = row.getDouble(2);
+            handler.row(quantity, row.wasNull() ? Double.NaN : price);
+        });
+    }
+
+    /**
+     * receives the rows of scanStock
+     */
+    @FunctionalInterface
+    public interface StockRowHandler {
+        void row(int quantity, double price);
+    }
+
+    private void insertChunk(List<Product> chunk) {
+        //ConnectionCallback hands us the connection bound to the current transaction
+        Instant now = Instant.now();  //what @UpdateTimestamp would have set
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                int batchStart = 0;
+                for (int i = 0; i < chunk.size(); i++) {
+                    Product product = chunk.get(i);
+                    statement.setString(1, product.getName());
+                    statement.setObject(2, product.getQuantity(), Types.INTEGER);
+                    statement.setObject(3, product.getPrice(), Types.DOUBLE);
+                    statement.setLong(4, product.getVersion());
+                    product.setLastModified(now);
+                    statement.setTimestamp(5, Timestamp.from(now));
+                    statement.addBatch();
+                    if (i + 1 - batchStart == batchSize || i + 1 == chunk.size()) {
+                        statement.executeBatch();
+                        readGeneratedIds(statement, chunk, batchStart);
+                        batchStart = i + 1;
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private Map<Integer, Integer> quantities(String sql, Collection<Integer> ids) {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        if (!ids.isEmpty()) {
+            namedJdbcTemplate.query(sql, Collections.singletonMap("ids", ids),
+                    (RowCallbackHandler) row -> quantities.put(row.getInt(1), row.getInt(2)));
+        }
+        return quantities;
+    }
+
+    private static void readGeneratedIds(PreparedStatement statement, List<Product> chunk, int batchStart) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            int i = batchStart;
+            while (keys.next()) {
+                chunk.get(i++).setId(keys.getInt(1));
+            }
+        }
+    }
+}
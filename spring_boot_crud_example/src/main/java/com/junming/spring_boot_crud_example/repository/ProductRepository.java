@@ -1,20 +1,106 @@
 package com.junming.spring_boot_crud_example.repository;
 
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+import com.junming.spring_boot_crud_example.dto.ProductView;
 import com.junming.spring_boot_crud_example.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * @Repository is a Spring annotation that indicates that the decorated class is a repository.
  * repository is a mechanism for encapsulating storage, retrieval, and search behavior which emulates a collection of objects.
  */
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Integer> {
+public interface ProductRepository extends JpaRepository<Product, Integer>, ProductRepositoryCustom {
     //interface extend interface. Class extend class. class implement interface
     //interface cannot be instantiated. Can only be implemented by a class.
 
     /**
      *This method is a custom method and not in the JpaRepositry. But, JpaRepository can read the 'findBy' keyword and look at the word after 'findBy'
+     * 'First' and 'OrderByIdAsc' make a duplicate name return the oldest product instead of throwing, and the ProductView return type
+     * makes it a projection, so the lookup goes through idx_product_name and never creates a managed entity.
+     */
+    Optional<ProductView> findFirstByNameOrderByIdAsc(String name);
+
+    /**
+     * Keyset (cursor) pagination on id. Unlike an OFFSET page, the database seeks straight to the cursor on the primary key,
+     * so page 10,000 costs the same as page 1. Pass the last id of the previous page as afterId (0 for the first page).
+     */
+    List<Product> findByIdGreaterThanOrderByIdAsc(Integer afterId, Pageable pageable);
+
+    /**
+     * The read-only twins of findById, findAll and the keyset page above, for the GET endpoints. Same queries, but every row becomes
+     * one immutable ProductView straight from the result set: no managed entity, no dirty-checking snapshot, nothing to flush.
+     * (Anything between 'find' and 'By' is just a name for Spring Data, so findViewById is findById with a different return type.)
+     */
+    Optional<ProductView> findViewById(Integer id);
+
+    @Query("select new com.junming.spring_boot_crud_example.dto.ProductView(p.id, p.name, p.quantity, p.price, p.version, p.lastModified) "
+            + "from Product p order by p.id")
+    List<ProductView> findAllViews();
+
+    List<ProductView> findViewsByIdGreaterThanOrderByIdAsc(Integer afterId, Pageable pageable);
+
+    /**
+     * Streams the whole table row by row instead of materializing it into a List. Must be consumed inside a transaction and closed.
+     * The fetch size hint lets the JDBC driver pull rows in chunks (MySQL needs useCursorFetch=true on the url for this),
+     * and read-only skips the dirty-checking snapshot Hibernate would otherwise keep for every row.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select p from Product p order by p.id")
+    Stream<Product> streamAll();
+
+    /**
+     * One aggregate row that changes whenever any product is inserted, updated or deleted: inserts raise max(id) (ids are never reused),
+     * updates raise sum(version), deletes lower the count. Used as the ETag of the whole list, so an unchanged catalog can be answered
+     * with 304 after reading only this row instead of loading and serializing every product.
+     */
+    @Query("select new com.junming.spring_boot_crud_example.dto.CatalogVersion(count(p), max(p.id), sum(p.version)) from Product p")
+    CatalogVersion catalogVersion();
+
+    /**
+     * Partial update in a single UPDATE statement: no SELECT first and no merge. Null parameters keep the current value,
+     * so every patch uses the same statement text and the driver can reuse one prepared statement for all of them.
+     * The version is bumped like Hibernate would, and a non-null expectedVersion makes the update optimistic.
+     * Returns the number of rows changed: 0 means the id does not exist or the row is at another version.
+     * lastModified is the JVM's Instant.now() (the SpEL parameter), as @UpdateTimestamp sets it on entity saves, not the database's
+     * current_timestamp: Last-Modified values from both paths are then compared on one clock.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)  //so entities loaded in the same transaction are not stale afterwards
+    @Transactional  //commits before returning, so the caller can invalidate caches knowing the new values are visible
+    @Query("update Product p set p.name = coalesce(:name, p.name), p.quantity = coalesce(:quantity, p.quantity), " +
+            "p.price = coalesce(:price, p.price), p.version = p.version + 1, p.lastModified = :#{T(java.time.Instant).now()} " +
+            "where p.id = :id and (:expectedVersion is null or p.version = :expectedVersion)")
+    int patch(@Param("id") int id, @Param("name") String name, @Param("quantity") Integer quantity,
+              @Param("price") Double price, @Param("expectedVersion") Long expectedVersion);
+
+    /**
+     * Adds delta to the quantity inside the database (quantity = quantity + delta), so concurrent orders cannot lose each other's updates
+     * the way read-modify-write does. A decrement that would take the quantity below 0 changes nothing.
+     * Returns 1 if applied, 0 if the id does not exist or there is not enough stock.
      */
-    Product findByName(String name);
-}
\ No newline at end of file
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("update Product p set p.quantity = coalesce(p.quantity, 0) + :delta, p.version = p.version + 1, p.lastModified = :#{T(java.time.Instant).now()} " +
+            "where p.id = :id and coalesce(p.quantity, 0) + :delta >= 0")
+    int adjustQuantity(@Param("id") int id, @Param("delta") int delta);
+}
@@ -0,0 +1,19 @@
+package com.junming.spring_boot_crud_example.repository;
+
+import com.junming.spring_boot_crud_example.dto.ProductSearch;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+
+import java.util.List;
+
+/**
+ * Queries that cannot be derived from a method name. Spring Data finds the implementation by the "Impl" suffix
+ * (ProductRepositoryCustomImpl) and mixes it into ProductRepository.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Runs the search as one SELECT with only the filters that are set, sorted and limited in the database.
+     * No count query is issued and no managed entities are created.
+     */
+    List<ProductView> search(ProductSearch search, int limit);
+}
@@ -0,0 +1,65 @@
+package com.junming.spring_boot_crud_example.repository;
+
+import com.junming.spring_boot_crud_example.dto.ProductSearch;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Criteria API implementation of ProductRepositoryCustom. The where clause only contains the filters that are set,
+ * so MySQL can pick the matching index (idx_product_name for the prefix, idx_product_price_quantity or idx_product_quantity_price for the ranges).
+ */
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<ProductView> search(ProductSearch search, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductView> query = cb.createQuery(ProductView.class);
+        Root<Product> product = query.from(Product.class);
+
+        List<Predicate> where = new ArrayList<>();
+        if (search.getNamePrefix() != null && !search.getNamePrefix().isEmpty()) {
+            //a prefix LIKE ('abc%') can use the index on name, a leading wildcard could not
+            where.add(cb.like(product.get("name"), escapeLike(search.getNamePrefix()) + "%", LIKE_ESCAPE));
+        }
+        if (search.getMinPrice() != null) {
+            where.add(cb.greaterThanOrEqualTo(product.get("price"), search.getMinPrice()));
+        }
+        if (search.getMaxPrice() != null) {
+            where.add(cb.lessThanOrEqualTo(product.get("price"), search.getMaxPrice()));
+        }
+        if (search.getMinQuantity() != null) {
+            where.add(cb.greaterThanOrEqualTo(product.get("quantity"), search.getMinQuantity()));
+        }
+        if (search.getMaxQuantity() != null) {
+            where.add(cb.lessThanOrEqualTo(product.get("quantity"), search.getMaxQuantity()));
+        }
+
+        query.select(cb.construct(ProductView.class, product.get("id"), product.get("name"), product.get("quantity"),
+                        product.get("price"), product.get("version"), product.get("lastModified")))
+                .where(where.toArray(new Predicate[0]))
+                .orderBy(search.getDirection() == Sort.Direction.DESC ? cb.desc(product.get(search.getSort())) : cb.asc(product.get(search.getSort())),
+                        cb.asc(product.get("id")));  //id as tie breaker, so equal prices always come back in the same order
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,102 @@
+package com.junming.spring_boot_crud_example.repository;
+
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import io.r2dbc.spi.Row;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * The product table through R2DBC, for the reactive profile. Same table and columns as the Product entity, but plain SQL:
+ * Spring Data R2DBC would need its own mapping annotations on Product, next to the JPA ones.
+ * Nothing here blocks: every method returns at once, and the rows arrive as the driver reads them. A Flux only fetches as many rows as
+ * its subscriber has asked for, so a slow client slows down the query instead of filling the heap.
+ *
+ * last_modified is bound and read as a LocalDateTime in the JVM's time zone, the same way Hibernate stores an Instant in a datetime column.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductRepository {
+
+    private static final String COLUMNS = "select id, name, quantity, price, version, last_modified from product_tbl";
+    private static final String INSERT_SQL = "insert into product_tbl (name, quantity, price, version, last_modified) "
+            + "values (:name, :quantity, :price, 0, :lastModified)";
+    //like the entity update: every column, the version bumped
+    private static final String UPDATE_SQL = "update product_tbl set name = :name, quantity = :quantity, price = :price, "
+            + "version = version + 1, last_modified = :lastModified where id = :id";
+
+    private final DatabaseClient client;
+
+    public ReactiveProductRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    public Flux<ProductView> findAll() {
+        return client.sql(COLUMNS + " order by id").map(ReactiveProductRepository::view).all();
+    }
+
+    public Flux<ProductView> findPage(int after, int limit) {
+        return client.sql(COLUMNS + " where id > :after order by id limit :limit")
+                .bind("after", after)
+                .bind("limit", limit)
+                .map(ReactiveProductRepository::view)
+                .all();
+    }
+
+    public Mono<ProductView> findById(int id) {
+        return client.sql(COLUMNS + " where id = :id").bind("id", id).map(ReactiveProductRepository::view).one();
+    }
+
+    public Mono<ProductView> findFirstByName(String name) {
+        return client.sql(COLUMNS + " where name = :name order by id limit 1").bind("name", name).map(ReactiveProductRepository::view).one();
+    }
+
+    /**
+     * inserts the product as a new row (its id is ignored) and returns it with the generated id
+     */
+    public Mono<ProductView> insert(Product product) {
+        Instant now = Instant.now();
+        return bindColumns(client.sql(INSERT_SQL), product, now)
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .map(id -> new ProductView(id, product.getName(), product.getQuantity(), product.getPrice(), 0L, now));
+    }
+
+    /**
+     * overwrites name, quantity and price of the row with the product's id. Empty when there is no such row.
+     */
+    public Mono<ProductView> update(Product product) {
+        return bindColumns(client.sql(UPDATE_SQL), product, Instant.now())
+                .bind("id", product.getId())
+                .fetch()
+                .rowsUpdated()
+                .flatMap(updated -> updated == 0 ? Mono.empty() : findById(product.getId()));
+    }
+
+    public Mono<Integer> deleteById(int id) {
+        return client.sql("delete from product_tbl where id = :id").bind("id", id).fetch().rowsUpdated();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindColumns(DatabaseClient.GenericExecuteSpec spec, Product product, Instant now) {
+        spec = product.getName() == null ? spec.bindNull("name", String.class) : spec.bind("name", product.getName());
+        spec = product.getQuantity() == null ? spec.bindNull("quantity", Integer.class) : spec.bind("quantity", product.getQuantity());
+        spec = product.getPrice() == null ? spec.bindNull("price", Double.class) : spec.bind("price", product.getPrice());
+        return spec.bind("lastModified", LocalDateTime.ofInstant(now, ZoneId.systemDefault()));
+    }
+
+    private static ProductView view(Row row) {
+        LocalDateTime lastModified = row.get("last_modified", LocalDateTime.class);
+        Long version = row.get("version", Long.class);
+        return new ProductView(row.get("id", Integer.class), row.get("name", String.class), row.get("quantity", Integer.class),
+                row.get("price", Double.class), version == null ? 0L : version,
+                lastModified == null ? null : lastModified.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
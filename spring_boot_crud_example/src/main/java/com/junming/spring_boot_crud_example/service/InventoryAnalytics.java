@@ -0,0 +1,286 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.config.DataSourceRouting;
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+import com.junming.spring_boot_crud_example.dto.InventoryReport;
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock aggregates (GET /products/analytics) from an in-memory InventorySnapshot instead of loading every Product.
+ *
+ * The snapshot is refreshed every product.analytics.refresh-interval: a one-row catalogVersion query first, and only when the
+ * table has changed since the last load are quantity and price of every row read again (as primitives, see
+ * ProductBulkRepository.scanStock). The background refresh only runs while reports are asked for: once there has been none for
+ * IDLE_INTERVALS intervals it stops touching the database, and the next report checks the snapshot itself before answering.
+ * With replica routing on, both queries go to a read replica.
+ *
+ * A report is one pass over the columns on a fork-join pool: the rows are split in halves until a part is small enough, every
+ * part is scanned on its own, and the partial totals are merged on the way back. All aggregates come out of that same pass.
+ * The size of the snapshot and how long loading it took are on product.analytics.snapshot.* and GET /products/analytics/snapshot.
+ */
+@Component
+public class InventoryAnalytics implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryAnalytics.class);
+
+    public static final int MAX_BUCKETS = 100;
+    private static final int SCAN_CHUNK = 1 << 14;  //rows scanned by one task; below this, splitting costs more than it saves
+    private static final int IDLE_INTERVALS = 3;     //refresh intervals without a report after which the background refresh pauses
+
+    private final ProductRepository repository;
+    private final ProductBulkRepository bulkRepository;
+    private final DataSourceRouting routing;  //null unless product.datasource.routing.enabled=true
+    private final int defaultLowStockThreshold;
+    private final Duration refreshInterval;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService refresher;
+    private volatile InventorySnapshot snapshot;
+    private volatile Instant checkedAt;
+    private volatile long reportedAt;  //System.nanoTime() of the last report
+    private Timer loadTimer;  //set by bindTo, null without a MeterRegistry
+
+    //@Lazy: both repositories end up needing the MeterRegistry (repository metrics, the DataSource), which needs this MeterBinder.
+    //Lazy proxies break that circle; the repositories are only used once the application runs.
+    public InventoryAnalytics(@Lazy ProductRepository repository,
+                              @Lazy ProductBulkRepository bulkRepository,
+                              ObjectProvider<DataSourceRouting> routing,
+                              @Value("${product.analytics.low-stock-threshold:10}") int defaultLowStockThreshold,
+                              @Value("${product.analytics.refresh-interval:30s}") Duration refreshInterval,
+                              @Value("${product.analytics.parallelism:0}") int parallelism) {
+        this.repository = repository;
+        this.bulkRepository = bulkRepository;
+        this.routing = routing.getIfAvailable();
+        this.defaultLowStockThreshold = defaultLowStockThreshold;
+        this.refreshInterval = refreshInterval;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = refreshInterval.toMillis();
+        this.reportedAt = System.nanoTime() - IDLE_INTERVALS * refreshInterval.toNanos();  //idle until the first report
+        //not right away: at startup the schema may not exist yet. Until then the first report loads the snapshot itself.
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * the aggregates over the current snapshot. lowStockThreshold null means product.analytics.low-stock-threshold;
+     * buckets is the number of equal-width price buckets between the lowest and highest price (1 to MAX_BUCKETS).
+     */
+    public InventoryReport report(Integer lowStockThreshold, int buckets) {
+        reportedAt = System.nanoTime();
+        InventorySnapshot current = current();
+        int threshold = lowStockThreshold != null ? lowStockThreshold : defaultLowStockThreshold;
+        boolean priced = !Double.isNaN(current.getMinPrice());
+        double min = current.getMinPrice();
+        //one price for everything (or a single product): one bucket, not a row of empty ones with no width
+        int bucketCount = current.getMaxPrice() > min ? Math.max(1, Math.min(buckets, MAX_BUCKETS)) : 1;
+        double width = priced ? (current.getMaxPrice() - min) / bucketCount : 0;
+        Totals totals = pool.invoke(new StockScan(current, 0, current.size(), threshold, priced ? bucketCount : 0, min, width));
+
+        List<InventoryReport.PriceBucket> histogram = new ArrayList<>(totals.histogram.length);
+        for (int i = 0; i < totals.histogram.length; i++) {
+            double to = i == totals.histogram.length - 1 ? current.getMaxPrice() : min + (i + 1) * width;
+            histogram.add(new InventoryReport.PriceBucket(min + i * width, to, totals.histogram[i]));
+        }
+        return new InventoryReport(checkedAt, current.size(), totals.quantity, totals.stockValue, threshold,
+                totals.lowStock, totals.outOfStock, totals.unpriced, histogram);
+    }
+
+    /**
+     * the snapshot as of now: loaded on first use, and checked again when the last check is more than a refresh interval ago
+     * (the background refresh pauses while nobody asks for reports)
+     */
+    public InventorySnapshot current() {
+        InventorySnapshot current = snapshot;
+        Instant checked = checkedAt;
+        return current != null && checked != null && checked.plus(refreshInterval).isAfter(Instant.now()) ? current : refresh();
+    }
+
+    /**
+     * reloads the snapshot if the product table changed since it was taken
+     */
+    public synchronized InventorySnapshot refresh() {
+        //a replica lagging a little is fine here, the report says how old its numbers are; so no fillsSharedCache stickiness
+        boolean onReplica = routing != null && routing.enterReplica(false);
+        try {
+            CatalogVersion version = repository.catalogVersion();  //before the scan: a write during it only causes one more reload
+            InventorySnapshot current = snapshot;
+            if (current == null || !current.getVersion().equals(version)) {
+                long start = System.nanoTime();
+                InventorySnapshot.Builder columns = new InventorySnapshot.Builder();
+                bulkRepository.scanStock(columns::add);
+                long loadNanos = System.nanoTime() - start;
+                current = columns.build(version, Instant.now(), loadNanos);
+                snapshot = current;
+                if (loadTimer != null) {
+                    loadTimer.record(loadNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            checkedAt = Instant.now();
+            return current;
+        } finally {
+            if (onReplica) {
+                routing.exitReplica();
+            }
+        }
+    }
+
+    private void refreshQuietly() {
+        if (System.nanoTime() - reportedAt > IDLE_INTERVALS * refreshInterval.toNanos()) {
+            return;  //no reports lately: nothing to keep fresh
+        }
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Refreshing the inventory snapshot failed, keeping the previous one", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        InventorySnapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loaded", current != null);
+        if (current != null) {
+            stats.put("rows", current.size());
+            stats.put("footprintBytes", current.footprintBytes());
+            stats.put("takenAt", current.getTakenAt());
+            stats.put("checkedAt", checkedAt);
+            stats.put("loadMillis", TimeUnit.NANOSECONDS.toMillis(current.getLoadNanos()));
+        }
+        stats.put("refreshInterval", refreshInterval.toString());
+        stats.put("parallelism", pool.getParallelism());
+        return stats;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.analytics.snapshot.rows", this, analytics -> analytics.snapshot == null ? 0 : analytics.snapshot.size())
+                .description("Products in the inventory snapshot")
+                .register(registry);
+        Gauge.builder("product.analytics.snapshot.footprint", this,
+                        analytics -> analytics.snapshot == null ? 0 : analytics.snapshot.footprintBytes())
+                .baseUnit("bytes")
+                .description("Heap used by the columns of the inventory snapshot")
+                .register(registry);
+        loadTimer = Timer.builder("product.analytics.snapshot.load")
+                .description("Time to read the product table into a new inventory snapshot")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        pool.shutdown();
+    }
+
+    /**
+     * Partial aggregates of a range of rows.
+     */
+    private static final class Totals {
+
+        long quantity;
+        double stockValue;
+        long lowStock;
+        long outOfStock;
+        long unpriced;
+        final long[] histogram;
+
+        Totals(int buckets) {
+            this.histogram = new long[buckets];
+        }
+
+        Totals merge(Totals other) {
+            quantity += other.quantity;
+            stockValue += other.stockValue;
+            lowStock += other.lowStock;
+            outOfStock += other.outOfStock;
+            unpriced += other.unpriced;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Aggregates rows from (inclusive) to to (exclusive): splits in two while the range is larger than SCAN_CHUNK,
+     * forking the left half and working on the right one in this thread.
+     */
+    private static final class StockScan extends RecursiveTask<Totals> {
+
+        private final InventorySnapshot snapshot;
+        private final int from;
+        private final int to;
+        private final int lowStockThreshold;
+        private final int buckets;
+        private final double minPrice;
+        private final double bucketWidth;
+
+        StockScan(InventorySnapshot snapshot, int from, int to, int lowStockThreshold, int buckets, double minPrice, double bucketWidth) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+            this.lowStockThreshold = lowStockThreshold;
+            this.buckets = buckets;
+            this.minPrice = minPrice;
+            this.bucketWidth = bucketWidth;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from > SCAN_CHUNK) {
+                int middle = (from + to) >>> 1;
+                StockScan left = new StockScan(snapshot, from, middle, lowStockThreshold, buckets, minPrice, bucketWidth);
+                left.fork();
+                Totals right = new StockScan(snapshot, middle, to, lowStockThreshold, buckets, minPrice, bucketWidth).compute();
+                return left.join().merge(right);
+            }
+            Totals totals = new Totals(buckets);
+            for (int row = from; row < to; row++) {
+                int quantity = snapshot.quantity(row);
+                double price = snapshot.price(row);
+                totals.quantity += quantity;
+                if (quantity <= lowStockThreshold) {
+                    totals.lowStock++;
+                }
+                if (quantity <= 0) {
+                    totals.outOfStock++;
+                }
+                if (Double.isNaN(price)) {
+                    totals.unpriced++;
+                    continue;
+                }
+                totals.stockValue += price * quantity;
+                int bucket = bucketWidth > 0 ? (int) ((price - minPrice) / bucketWidth) : 0;
+                totals.histogram[Math.min(bucket, buckets - 1)]++;
+            }
+            return totals;
+        }
+    }
+}
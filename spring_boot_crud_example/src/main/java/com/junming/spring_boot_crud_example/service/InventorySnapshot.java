@@ -0,0 +1,106 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Quantity and price of every product at one point in time, stored by column: row i is quantities[i] and prices[i].
+ * Two primitive arrays instead of a list of entities, so a million products take 12 MB in two objects the GC never has to trace,
+ * and a scan reads memory front to back. Immutable once built; a refresh builds a new one.
+ */
+public final class InventorySnapshot {
+
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final int[] quantities;
+    private final double[] prices;      //NaN for products without a price
+    private final double minPrice;      //over the priced products; NaN when there are none
+    private final double maxPrice;
+    private final CatalogVersion version;
+    private final Instant takenAt;
+    private final long loadNanos;
+
+    private InventorySnapshot(int[] quantities, double[] prices, double minPrice, double maxPrice,
+                              CatalogVersion version, Instant takenAt, long loadNanos) {
+        this.quantities = quantities;
+        this.prices = prices;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.version = version;
+        this.takenAt = takenAt;
+        this.loadNanos = loadNanos;
+    }
+
+    public int size() {
+        return quantities.length;
+    }
+
+    int quantity(int row) {
+        return quantities[row];
+    }
+
+    double price(int row) {
+        return prices[row];
+    }
+
+    public double getMinPrice() {
+        return minPrice;
+    }
+
+    public double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public CatalogVersion getVersion() {
+        return version;
+    }
+
+    public Instant getTakenAt() {
+        return takenAt;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * heap used by the columns
+     */
+    public long footprintBytes() {
+        return 2L * ARRAY_HEADER_BYTES + (long) quantities.length * Integer.BYTES + (long) prices.length * Double.BYTES;
+    }
+
+    /**
+     * Collects rows into growing columns (doubling, like ArrayList), trimmed to size by build().
+     */
+    static final class Builder {
+
+        private int[] quantities = new int[1024];
+        private double[] prices = new double[1024];
+        private int size;
+        private double minPrice = Double.POSITIVE_INFINITY;
+        private double maxPrice = Double.NEGATIVE_INFINITY;
+
+        void add(int quantity, double price) {
+            if (size == quantities.length) {
+                quantities = Arrays.copyOf(quantities, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            quantities[size] = quantity;
+            prices[size] = price;
+            size++;
+            if (!Double.isNaN(price)) {
+                minPrice = Math.min(minPrice, price);
+                maxPrice = Math.max(maxPrice, price);
+            }
+        }
+
+        InventorySnapshot build(CatalogVersion version, Instant takenAt, long loadNanos) {
+            boolean priced = minPrice <= maxPrice;
+            return new InventorySnapshot(Arrays.copyOf(quantities, size), Arrays.copyOf(prices, size),
+                    priced ? minPrice : Double.NaN, priced ? maxPrice : Double.NaN, version, takenAt, loadNanos);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache in front of the product lookups. Entries are evicted by size (least recently/frequently used first)
+ * and by age, so a write that somehow bypasses invalidation is only visible for at most expire-after-write.
+ *
+ * Products are cached by id. The name cache only maps a name to an id, and a name hit is checked against the cached product,
+ * so a rename or a delete only ever has to invalidate the id.
+ *
+ * Products are cached as immutable ProductViews, so the cached instance itself is handed out: nobody can change it,
+ * and a hit allocates nothing.
+ *
+ * Loaders run on the calling thread but outside every cache lock, so an invalidate never waits for a database query.
+ * (It used to: the loader ran inside Caffeine's compute, and a writer holding its connection while invalidating
+ * deadlocked against a loader waiting for one.) A load that races a write is handed to its caller but not cached.
+ */
+@Component
+public class ProductCache {
+
+    private final AsyncCache<Integer, ProductView> byId;  //an in-flight load is a placeholder future, which an invalidate simply removes
+    private final Cache<String, Integer> byName;
+    private final AtomicLong invalidations = new AtomicLong();  //bumped by every invalidate, so a name load can tell it raced a write
+
+    public ProductCache(@Value("${product.cache.maximum-size:10000}") long maximumSize,
+                        @Value("${product.cache.expire-after-write:60s}") Duration expireAfterWrite) {
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        this.byName = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * returns the cached product, or loads it with the loader and caches it. Missing products are not cached.
+     */
+    public ProductView getById(int id, Function<Integer, ProductView> loader) {
+        //the placeholder goes in before the row is read, so a write that commits during the load removes it and the stale result is never cached.
+        //Concurrent misses on the same key wait for the first one instead of all hitting the database.
+        CompletableFuture<ProductView> placeholder = new CompletableFuture<>();
+        CompletableFuture<ProductView> cached = byId.get(id, (key, executor) -> placeholder);
+        if (cached != placeholder) {
+            try {
+                return cached.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            ProductView product = loader.apply(id);
+            placeholder.complete(product);  //a null (missing product) is dropped by the cache
+            return product;
+        } catch (RuntimeException | Error e) {
+            placeholder.completeExceptionally(e);  //so are failed loads, and the waiters see the same error
+            throw e;
+        }
+    }
+
+    public ProductView getByName(String name, Function<String, ProductView> loader) {
+        Integer id = byName.getIfPresent(name);
+        if (id != null) {
+            ProductView cached = cachedProduct(id);
+            if (cached != null && name.equals(cached.getName())) {
+                return cached;
+            }
+            byName.invalidate(name);  //renamed, deleted or evicted since we indexed it
+        }
+        long seen = invalidations.get();
+        ProductView product = loader.apply(name);
+        if (product != null && product.getId() != null) {
+            //checked under the key's lock, so an invalidate that starts after the check removes what we put.
+            //Any write during the load, on any id, skips the put: the id was not known when the load started.
+            byId.asMap().compute(product.getId(), (key, current) ->
+                    current == null && invalidations.get() == seen ? CompletableFuture.completedFuture(product) : current);
+            byName.put(name, product.getId());  //harmless if the put was skipped, a name hit is checked against byId
+        }
+        return product;
+    }
+
+    private ProductView cachedProduct(int id) {
+        CompletableFuture<ProductView> cached = byId.getIfPresent(id);
+        return cached != null && cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+    }
+
+    /**
+     * Call after the write has committed. Never blocks on a load, so it is safe to call while holding a connection.
+     */
+    public void invalidate(Integer id) {
+        if (id != null) {
+            invalidations.incrementAndGet();  //before the removal, so a name load either sees it or is removed after its put
+            byId.synchronous().invalidate(id);
+        }
+    }
+
+    public void invalidateAll(Collection<Product> products) {
+        products.forEach(product -> invalidate(product.getId()));
+    }
+
+    /**
+     * drops the cached products with fromId <= id <= toId. Walks the cache, not the range, so a huge range costs at most maximum-size checks.
+     */
+    public void invalidateRange(int fromId, int toId) {
+        invalidations.incrementAndGet();
+        byId.asMap().keySet().removeIf(id -> id >= fromId && id <= toId);
+    }
+
+    /**
+     * hit, miss and eviction counters for both keys since startup
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("byId", stats(byId.synchronous().stats(), byId.synchronous().estimatedSize()));
+        stats.put("byName", stats(byName.stats(), byName.estimatedSize()));
+        return stats;
+    }
+
+    private static Map<String, Object> stats(CacheStats cacheStats, long size) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size);
+        stats.put("hits", cacheStats.hitCount());
+        stats.put("misses", cacheStats.missCount());
+        stats.put("evictions", cacheStats.evictionCount());
+        stats.put("hitRate", cacheStats.hitRate());
+        return stats;
+    }
+}
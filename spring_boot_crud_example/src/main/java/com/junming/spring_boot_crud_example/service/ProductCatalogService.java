@@ -0,0 +1,278 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.junming.spring_boot_crud_example.dto.ImportResult;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming import and export of the whole catalog, as CSV or NDJSON (one JSON object per line).
+ *
+ * An import reads the request body record by record and never holds more than two batches: the one being parsed, and the one a writer thread
+ * is saving through ProductService.saveProducts (bulk JDBC insert, cache and name index kept in sync). So parsing and writing overlap,
+ * and a multi-GB file needs as much memory as a small one. A line that cannot be parsed, or a batch that cannot be written,
+ * is reported with its line number(s) and the import goes on with the next one. Batches that were written stay written.
+ */
+@Service
+public class ProductCatalogService {
+
+    //column order of the CSV export. An import may use any subset, in any order, as long as the header names them.
+    private static final List<String> CSV_COLUMNS = Arrays.asList("id", "name", "quantity", "price", "version", "lastModified");
+
+    @Autowired
+    private ProductService service;
+
+    @Autowired
+    private ObjectMapper mapper;  //Spring MVC's mapper, so NDJSON lines are read like the @RequestBody of /addProduct
+
+    private final CsvMapper csvMapper = CsvMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)  //lastModified as 2021-07-01T10:15:30Z, like in the JSON responses
+            .build();
+
+    @Value("${product.import.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${product.import.max-reported-errors:100}")
+    private int maxReportedErrors;
+
+    /**
+     * imports a CSV file whose first record is a header naming the columns (e.g. "name,quantity,price").
+     * Rows with an id update that product, rows without one are inserted.
+     * Records are read by the CSV parser, not per line, so a quoted name may contain line breaks (as the export writes them).
+     */
+    public ImportResult importCsv(InputStream in) throws IOException {
+        //without a schema a CSV record reads as an array of values, so a row with the wrong number of columns is reported, not a parse error
+        MappingIterator<String[]> records = csvMapper.readerFor(String[].class)
+                .with(CsvParser.Feature.WRAP_AS_ARRAY)
+                .with(CsvParser.Feature.SKIP_EMPTY_LINES)
+                .readValues(reader(in));
+        if (!records.hasNextValue()) {
+            return new ImportResult(0, 0, new ArrayList<>());
+        }
+        String[] columns = records.nextValue();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].trim();
+            if (!CSV_COLUMNS.contains(columns[i])) {
+                ImportReport report = new ImportReport(maxReportedErrors);
+                report.failed(1, 1, "unknown column '" + columns[i] + "', expected some of " + CSV_COLUMNS);
+                return report.toResult();
+            }
+        }
+        return importRecords(new Records() {
+            @Override
+            public long nextLine() throws IOException {
+                //where the next record starts, so a record spanning several lines is reported by its first one
+                return records.hasNextValue() ? records.getCurrentLocation().getLineNr() : -1;
+            }
+
+            @Override
+            public Product next() throws IOException {
+                String[] values = records.nextValue();
+                if (values.length != columns.length) {
+                    throw new IllegalArgumentException("expected " + columns.length + " values, found " + values.length);
+                }
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < columns.length; i++) {
+                    row.put(columns[i], values[i]);
+                }
+                try {
+                    return csvMapper.convertValue(row, Product.class);
+                } catch (IllegalArgumentException e) {
+                    if (e.getCause() instanceof JsonProcessingException) {
+                        throw (JsonProcessingException) e.getCause();  //convertValue wraps the mapping error, reported like a parse error
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * imports one JSON product per line, e.g. {"name":"iphone","quantity":23,"price":800.0}
+     */
+    public ImportResult importNdjson(InputStream in) throws IOException {
+        ObjectReader rowReader = mapper.readerFor(Product.class);
+        BufferedReader reader = reader(in);
+        return importRecords(new Records() {
+            private long lineNumber;
+            private String line;
+
+            @Override
+            public long nextLine() throws IOException {
+                do {
+                    line = reader.readLine();
+                    lineNumber++;
+                } while (line != null && line.trim().isEmpty());
+                return line == null ? -1 : lineNumber;
+            }
+
+            @Override
+            public Product next() throws IOException {
+                return rowReader.readValue(line);
+            }
+        });
+    }
+
+    /**
+     * writes the whole catalog as CSV with a header line, straight off the database cursor
+     */
+    public void exportCsv(OutputStream out) throws IOException {
+        CsvSchema.Builder schema = CsvSchema.builder().setUseHeader(true);
+        CSV_COLUMNS.forEach(schema::addColumn);
+        JsonGenerator generator = csvMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);  //the servlet container owns the response stream
+        try (SequenceWriter rows = csvMapper.writer(schema.build()).writeValues(generator)) {
+            service.forEachProduct(product -> {
+                try {
+                    rows.write(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private ImportResult importRecords(Records records) throws IOException {
+        ImportReport report = new ImportReport(maxReportedErrors);
+        ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "product-import-writer"));
+        Future<?> inFlight = CompletableFuture.completedFuture(null);
+        try {
+            List<Product> batch = new ArrayList<>(batchSize);
+            long lineNumber;
+            long firstLine = 0;
+            long lastLine = 0;
+            while ((lineNumber = records.nextLine()) != -1) {
+                Product product;
+                try {
+                    product = records.next();
+                } catch (JsonProcessingException e) {
+                    report.failed(lineNumber, 1, e.getOriginalMessage());  //without the "at [Source: ...]" location, the line number says where
+                    continue;
+                } catch (RuntimeException e) {
+                    report.failed(lineNumber, 1, e.getMessage());
+                    continue;
+                }
+                if (product.getName() == null || product.getName().trim().isEmpty()) {
+                    report.failed(lineNumber, 1, "name is required");
+                    continue;
+                }
+                if (batch.isEmpty()) {
+                    firstLine = lineNumber;
+                }
+                batch.add(product);
+                lastLine = lineNumber;
+                if (batch.size() == batchSize) {
+                    await(inFlight);  //at most one batch is being written while the next one is parsed
+                    inFlight = writer.submit(write(batch, firstLine, lastLine, report));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            await(inFlight);
+            if (!batch.isEmpty()) {
+                write(batch, firstLine, lastLine, report).run();
+            }
+        } finally {
+            writer.shutdownNow();
+        }
+        return report.toResult();
+    }
+
+    private Runnable write(List<Product> batch, long firstLine, long lastLine, ImportReport report) {
+        return () -> {
+            try {
+                service.saveProducts(batch);
+                report.imported(batch.size());
+            } catch (RuntimeException e) {
+                report.failed(firstLine, batch.size(), "batch of " + batch.size() + " rows on lines " + firstLine + "-" + lastLine
+                        + " not saved: " + e.getMessage());
+            }
+        };
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());  //write() catches everything a batch can throw, so this is a bug
+        }
+    }
+
+    private static BufferedReader reader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * the records of one import, in order
+     */
+    private interface Records {
+        /** moves to the next record and returns the line it starts on, or -1 at the end of the input */
+        long nextLine() throws IOException;
+
+        /** parses the record nextLine moved to */
+        Product next() throws IOException;
+    }
+
+    /**
+     * counters shared by the parsing thread and the writer thread
+     */
+    private static final class ImportReport {
+
+        private final int maxReportedErrors;
+        private final List<ImportResult.LineError> errors = new ArrayList<>();
+        private long imported;
+        private long failed;
+
+        ImportReport(int maxReportedErrors) {
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        synchronized void imported(int rows) {
+            imported += rows;
+        }
+
+        synchronized void failed(long line, int rows, String message) {
+            failed += rows;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ImportResult.LineError(line, message));
+            }
+        }
+
+        synchronized ImportResult toResult() {
+            return new ImportResult(imported, failed, new ArrayList<>(errors));
+        }
+    }
+}
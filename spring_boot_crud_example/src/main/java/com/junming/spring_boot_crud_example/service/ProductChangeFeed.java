@@ -0,0 +1,219 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.dto.ProductChange;
+import com.junming.spring_boot_crud_example.dto.ProductChanges;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The last product.changes.capacity writes of this instance, so clients can follow changes instead of polling /products.
+ *
+ * The changes sit in a ring buffer: change number n is kept in slot n mod capacity until change n + capacity overwrites it.
+ * Memory is fixed, however many clients there are and however slow they read. A client only holds a cursor; one that falls more than
+ * capacity changes behind is told to resync (reload /products) instead of being buffered for. Reading is lock free: every change
+ * carries its own offset, so a reader notices when the slot it read has been overwritten meanwhile.
+ *
+ * A cursor is "epoch-offset", the epoch being the start time of this instance. A cursor from before a restart has another epoch and
+ * gets a resync, never the wrong changes. Only writes through this instance are in its feed.
+ *
+ * Waiting clients subscribe a callback. Callbacks run on the product-changes threads, never on the thread that wrote, and each
+ * subscription runs one callback at a time however many changes arrive meanwhile.
+ */
+@Component
+public class ProductChangeFeed implements MeterBinder {
+
+    private final AtomicReferenceArray<ProductChange> ring;
+    private final int mask;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+    private final ExecutorService dispatcher;
+    private final LongAdder resyncs = new LongAdder();
+    private volatile long next;  //offset of the next change, written under the lock after its slot
+
+    public ProductChangeFeed(@Value("${product.changes.capacity:4096}") int capacity,
+                             @Value("${product.changes.dispatch-threads:4}") int dispatchThreads) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);  //next power of two >= capacity
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "product-changes-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void saved(ProductView product) {
+        publish(ProductChange.Type.SAVED, product.getId(), product);
+    }
+
+    public void changed(int id) {
+        publish(ProductChange.Type.CHANGED, id, null);
+    }
+
+    public void deleted(int id) {
+        publish(ProductChange.Type.DELETED, id, null);
+    }
+
+    public void reload() {
+        publish(ProductChange.Type.RELOAD, null, null);
+    }
+
+    private void publish(ProductChange.Type type, Integer id, ProductView product) {
+        synchronized (this) {
+            long offset = next;
+            ring.set((int) offset & mask, new ProductChange(offset, type, id, product));
+            next = offset + 1;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * the cursor of the next change, for clients that start following now
+     */
+    public String cursor() {
+        return cursor(next);
+    }
+
+    /**
+     * the cursor that continues after the given change
+     */
+    public String cursorAfter(ProductChange change) {
+        return cursor(change.getOffset() + 1);
+    }
+
+    /**
+     * up to max changes after the cursor, or a resync when they are no longer kept
+     */
+    public ProductChanges read(String after, int max) {
+        long end = next;
+        long from = offset(after);
+        if (from < 0 || from > end || end - from > ring.length()) {
+            return resync(end);
+        }
+        List<ProductChange> changes = new ArrayList<>((int) Math.min(max, end - from));
+        for (long offset = from; offset < end && changes.size() < max; offset++) {
+            ProductChange change = ring.get((int) offset & mask);
+            if (change.getOffset() != offset) {
+                return resync(next);  //overwritten while we were reading
+            }
+            changes.add(change);
+        }
+        return new ProductChanges(changes, cursor(from + changes.size()), false);
+    }
+
+    /**
+     * calls onChange (on a product-changes thread) after every change from now on, until the subscription is cancelled
+     */
+    public Subscription subscribe(Runnable onChange) {
+        Subscription subscription = new Subscription(onChange);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public int subscriptionCount() {
+        return subscriptions.size();
+    }
+
+    private ProductChanges resync(long end) {
+        resyncs.increment();
+        return new ProductChanges(Collections.emptyList(), cursor(end), true);
+    }
+
+    private String cursor(long offset) {
+        return epoch + "-" + offset;
+    }
+
+    //-1 for a cursor this instance did not hand out
+    private long offset(String cursor) {
+        if (cursor == null || !cursor.startsWith(epoch + "-")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(cursor.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("product.changes.published", this, feed -> feed.next)
+                .description("Changes published on the product change feed")
+                .register(registry);
+        FunctionCounter.builder("product.changes.resyncs", resyncs, LongAdder::sum)
+                .description("Readers of the product change feed told to reload because their changes were no longer kept")
+                .register(registry);
+        Gauge.builder("product.changes.subscriptions", this, ProductChangeFeed::subscriptionCount)
+                .description("Clients waiting on the product change feed")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * A waiting client. Signals that arrive while its callback runs are folded into one more run, so callbacks never overlap.
+     */
+    public final class Subscription {
+
+        private final Runnable onChange;
+        private final AtomicInteger signals = new AtomicInteger();
+
+        private Subscription(Runnable onChange) {
+            this.onChange = onChange;
+        }
+
+        /**
+         * runs the callback soon, e.g. once right after subscribing, for changes that came in before the subscription
+         */
+        public void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException shuttingDown) {
+                    cancel();
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = signals.get();
+            do {
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    cancel();  //a broken client must not get more callbacks
+                    return;
+                }
+                missed = signals.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-memory name index for type-ahead, so suggestions never touch MySQL.
+ *
+ * Names are lower-cased and kept in a sorted map, so all names starting with a prefix are one contiguous range of it (what a trie gives you,
+ * without a node per character). For typos and matches in the middle of a name there is a trigram inverted index as well:
+ * "iphone" is indexed under "$ip", "iph", "pho", "hon" and "one", and a query scores every name by the share of its own trigrams the name contains.
+ *
+ * ProductService keeps it in sync on every write and fills it on the first suggestion. Reads are lock free, writes are serialized.
+ * A rebuild fills a new set of maps next to the current one and swaps it in when it is complete.
+ */
+@Component
+public class ProductNameIndex implements MeterBinder {
+
+    private static final int GRAM = 3;
+    private static final double MIN_FUZZY_SCORE = 0.34;  //at least a third of the query trigrams have to appear in the name
+
+    //rough per-object sizes on a 64-bit JVM with compressed oops, for the memory estimate only
+    private static final int ENTRY_BYTES = 48;   //map node/entry, including the boxed Integer id
+    private static final int STRING_BYTES = 40;  //String + char[] headers
+
+    private volatile Tables tables = new Tables();  //replaced as a whole by rebuild
+    private List<Consumer<Tables>> pendingWrites;  //the writes made while a rebuild runs, replayed on its tables. Guarded by this.
+
+    /**
+     * adds the product, or moves it to its new name. A null name removes it.
+     */
+    public synchronized void put(Integer id, String name) {
+        write(tables -> tables.put(id, name));
+    }
+
+    public synchronized void remove(Integer id) {
+        write(tables -> tables.remove(id));
+    }
+
+    /**
+     * removes every product with fromId <= id <= toId
+     */
+    public synchronized void removeRange(int fromId, int toId) {
+        write(tables -> tables.removeRange(fromId, toId));
+    }
+
+    /**
+     * Replaces the whole index with the products the loader hands over, without ever serving a half-filled index.
+     * The loader fills new tables while the current ones keep answering and taking writes. Those writes are also recorded and
+     * replayed on the new tables before they are swapped in, so a product deleted (or renamed) after the loader read it does not come back.
+     */
+    public void rebuild(Consumer<BiConsumer<Integer, String>> loader) {
+        synchronized (this) {
+            if (pendingWrites != null) {
+                throw new IllegalStateException("The name index is already being rebuilt");
+            }
+            pendingWrites = new ArrayList<>();
+        }
+        Tables rebuilt = new Tables();
+        boolean loaded = false;
+        try {
+            loader.accept(rebuilt::put);
+            loaded = true;
+        } finally {
+            synchronized (this) {
+                List<Consumer<Tables>> writes = pendingWrites;
+                pendingWrites = null;
+                if (loaded) {  //a loader that failed half way leaves the current tables in place
+                    writes.forEach(write -> write.accept(rebuilt));
+                    tables = rebuilt;
+                }
+            }
+        }
+    }
+
+    /**
+     * Up to limit products whose name starts with the query (case-insensitive, alphabetical),
+     * topped up with the best fuzzy matches when there are fewer prefix matches than that.
+     */
+    public List<ProductSuggestion> suggest(String query, int limit) {
+        String key = normalize(query);
+        if (key.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Tables tables = this.tables;  //one snapshot for the whole query, even if a rebuild swaps in new tables meanwhile
+        List<ProductSuggestion> result = new ArrayList<>(Math.min(limit, 64));
+        Set<Integer> seen = new HashSet<>();
+        //every key from key (inclusive) up to key + Character.MAX_VALUE starts with key
+        for (Set<Integer> ids : tables.byName.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+            for (Integer id : ids) {
+                String name = tables.names.get(id);
+                if (name != null && seen.add(id)) {
+                    result.add(new ProductSuggestion(id, name));
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        if (key.length() >= 2) {
+            addFuzzy(tables, key, limit, seen, result);
+        }
+        return result;
+    }
+
+    /**
+     * entry counts and an estimate of the heap the index holds
+     */
+    public Map<String, Object> stats() {
+        Tables tables = this.tables;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("products", tables.names.size());
+        stats.put("distinctNames", tables.byName.size());
+        stats.put("trigrams", tables.byGram.size());
+        stats.put("estimatedBytes", tables.estimatedBytes());
+        return stats;
+    }
+
+    /**
+     * Walks every map once, so it costs O(index size). Fine for a stats endpoint or a gauge scraped every few seconds, not for a hot path.
+     */
+    public long estimatedBytes() {
+        return tables.estimatedBytes();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.name.index.size", this, index -> index.tables.names.size())
+                .description("Products in the in-memory name index")
+                .register(registry);
+        Gauge.builder("product.name.index.memory", this, ProductNameIndex::estimatedBytes)
+                .description("Estimated heap used by the in-memory name index")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static void addFuzzy(Tables tables, String key, int limit, Set<Integer> seen, List<ProductSuggestion> result) {
+        List<Set<Integer>> postings = new ArrayList<>();
+        for (String gram : grams(key)) {
+            postings.add(tables.byGram.getOrDefault(gram, Collections.emptySet()));
+        }
+        int needed = (int) Math.ceil(MIN_FUZZY_SCORE * postings.size());
+        //A name sharing at least `needed` of the q query trigrams must be in one of the q - needed + 1 rarest posting lists,
+        //so only those are walked to find candidates. Common trigrams ("pro" in every "product-...") are then only probed, never scanned.
+        postings.sort(Comparator.comparingInt(Set::size));
+        int scanned = postings.size() - needed + 1;
+        int wanted = limit - result.size();
+        //the best `wanted` candidates so far, worst on top, so a full sort of every candidate is never needed
+        PriorityQueue<Candidate> best = new PriorityQueue<>(wanted + 1, Candidate.BEST_FIRST.reversed());
+        for (int i = 0; i < scanned; i++) {
+            //a name first met in list i is missing from the i rarer lists, so it shares at most q - i trigrams
+            if (best.size() == wanted && best.peek().shared > postings.size() - i) {
+                break;
+            }
+            for (Integer id : postings.get(i)) {
+                if (!seen.add(id)) {
+                    continue;  //a prefix match, or already scored from a rarer list
+                }
+                int shared = 0;
+                for (Set<Integer> ids : postings) {
+                    if (ids.contains(id)) {
+                        shared++;
+                    }
+                }
+                String name = tables.names.get(id);
+                if (name != null && shared >= needed) {
+                    best.add(new Candidate(id, name, shared));
+                    if (best.size() > wanted) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> ranked = new ArrayList<>(best);
+        ranked.sort(Candidate.BEST_FIRST);
+        for (Candidate candidate : ranked) {
+            result.add(new ProductSuggestion(candidate.id, candidate.name));
+        }
+    }
+
+    private static void removePosting(Map<String, Set<Integer>> index, String key, Integer id) {
+        Set<Integer> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * trigrams of the name with a leading '$', so the start of a name gets its own grams ("$ip" for "iphone")
+     */
+    private static Set<String> grams(String key) {
+        String padded = "$" + key;
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    //applies the write to the current tables, and records it for the new ones if a rebuild is running
+    private void write(Consumer<Tables> write) {
+        write.accept(tables);
+        if (pendingWrites != null) {
+            pendingWrites.add(write);
+        }
+    }
+
+    /**
+     * The maps of one generation of the index. Only written under the ProductNameIndex lock (or by the one rebuild filling it),
+     * read lock free.
+     */
+    private static final class Tables {
+
+        final Map<Integer, String> names = new ConcurrentHashMap<>();
+        final NavigableMap<String, Set<Integer>> byName = new ConcurrentSkipListMap<>();
+        final Map<String, Set<Integer>> byGram = new ConcurrentHashMap<>();
+
+        void put(Integer id, String name) {
+            if (id == null) {
+                return;
+            }
+            String old = name == null ? names.remove(id) : names.put(id, name);
+            if (old != null) {
+                unlink(id, old);
+            }
+            if (name != null) {
+                String key = normalize(name);
+                byName.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+                for (String gram : grams(key)) {
+                    byGram.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(id);
+                }
+            }
+        }
+
+        void remove(Integer id) {
+            String old = id == null ? null : names.remove(id);
+            if (old != null) {
+                unlink(id, old);
+            }
+        }
+
+        void removeRange(int fromId, int toId) {
+            for (Integer id : new ArrayList<>(names.keySet())) {
+                if (id >= fromId && id <= toId) {
+                    remove(id);
+                }
+            }
+        }
+
+        long estimatedBytes() {
+            long bytes = 0;
+            for (String name : names.values()) {
+                bytes += ENTRY_BYTES + STRING_BYTES + 2L * name.length();
+            }
+            for (Map.Entry<String, Set<Integer>> entry : byName.entrySet()) {
+                bytes += ENTRY_BYTES + STRING_BYTES + 2L * entry.getKey().length() + (long) ENTRY_BYTES * entry.getValue().size();
+            }
+            for (Set<Integer> ids : byGram.values()) {
+                bytes += ENTRY_BYTES + STRING_BYTES + 2L * GRAM + (long) ENTRY_BYTES * ids.size();
+            }
+            return bytes;
+        }
+
+        private void unlink(Integer id, String name) {
+            String key = normalize(name);
+            removePosting(byName, key, id);
+            for (String gram : grams(key)) {
+                removePosting(byGram, gram, id);
+            }
+        }
+    }
+
+    private static final class Candidate {
+
+        //most shared trigrams first, then the shorter (closer) name, then the oldest product
+        static final Comparator<Candidate> BEST_FIRST = Comparator.comparingInt((Candidate c) -> -c.shared)
+                .thenComparingInt(c -> c.name.length())
+                .thenComparingInt(c -> c.id);
+
+        final int id;
+        final String name;
+        final int shared;
+
+        Candidate(int id, String name, int shared) {
+            this.id = id;
+            this.name = name;
+            this.shared = shared;
+        }
+    }
+}
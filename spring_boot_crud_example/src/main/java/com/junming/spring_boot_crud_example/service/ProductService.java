@@ -1,11 +1,30 @@
 package com.junming.spring_boot_crud_example.service;
 
+import com.junming.spring_boot_crud_example.config.ReplicaRead;
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+import com.junming.spring_boot_crud_example.dto.ProductPatch;
+import com.junming.spring_boot_crud_example.dto.ProductSearch;
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import com.junming.spring_boot_crud_example.dto.ProductView;
 import com.junming.spring_boot_crud_example.entity.Product;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
 import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @Service annotation indicate that they're holding the business logic.
@@ -14,6 +33,11 @@ import java.util.List;
 @Service
 public class ProductService { //Do not mistake that this class is an implementation of the ProductRepository interface. The repository interface is implemented in some other class in the CRUDRepository framework. We then inject the interface to this class to use the methods in the CRUDRepository
 
+    /**
+     * upper bound on a single keyset page, so a client cannot ask for the whole table in one go
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired  //automatic dependency injection. If there is only a single constructor, can omit the autowired
     private ProductRepository repository;
     //Interface cannot be instantiated. It can only be implemented. An object that implements the ProductRepository interface is created by the Spring IOC container
@@ -23,57 +47,324 @@ public class ProductService { //Do not mistake that this class is an implementat
     //https://www.quora.com/In-Java-should-I-use-interface-as-variable-type-instead-of-class-and-why
     //using interface type as the variable allows for loose coupling.
 
+    @Autowired
+    private ProductBulkRepository bulkRepository;  //batched JDBC inserts for new products
+
+    @Autowired
+    private QuantityCoalescer quantityCoalescer;  //in-memory deltas for the hot products listed in product.quantity.hot-ids
+
+    @Autowired
+    private ProductCache cache;  //read-through cache for the id and name lookups. Every write below has to invalidate it.
+
+    @Autowired
+    private ProductNameIndex nameIndex;  //in-memory type-ahead index. Every write that can add, rename or remove a product has to update it.
+
+    @Autowired
+    private ProductChangeFeed changes;  //what clients of /products/changes follow. Every write below has to publish to it.
+
+    @PersistenceContext  //the shared, transaction-bound EntityManager. Used to detach rows while streaming.
+    private EntityManager entityManager;
+
+    private volatile boolean nameIndexLoaded;  //the name index is filled from the database on the first suggestion, not at startup
+
     /**
      *  post methods to save product data to database
      */
+    //@Timed records a product.service timer per operation. Percentiles and histogram buckets are configured in application.properties
+    @Timed(value = "product.service", extraTags = {"operation", "save"})
     public Product saveProduct(Product product){
-        return repository.save(product);  //this is an inbuilt methods given by jpa com.junming.spring_boot_crud_example.repository
+        if (product.getId() != null) {
+            product = onStoredRow(repository.findById(product.getId()).orElse(null), product);
+        }
+        Product saved = repository.save(product);  //this is an inbuilt methods given by jpa com.junming.spring_boot_crud_example.repository
+        cache.invalidate(saved.getId());  //save() also updates when the id already exists
+        nameIndex.put(saved.getId(), saved.getName());
+        changes.saved(ProductView.of(saved));
+        return saved;
     }
 
     /**
-     * Post method to save a list of products into the database
+     * Post method to save a list of products into the database.
+     * New products (no id yet) go through the batched bulk insert, the rest are saved (updated) through jpa as before.
+     * The list is returned in the order it was given, with the generated ids filled in.
      */
+    @Timed(value = "product.service", extraTags = {"operation", "saveAll"})
     public List<Product> saveProducts(List<Product> products){
-        return repository.saveAll(products); //this is an inbuilt methods given by jpa com.junming.spring_boot_crud_example.repository
+        List<Product> newProducts = new ArrayList<>();
+        List<Product> existingProducts = new ArrayList<>();
+        boolean[] isNew = new boolean[products.size()];
+        for (int i = 0; i < products.size(); i++) {
+            isNew[i] = products.get(i).getId() == null;
+            (isNew[i] ? newProducts : existingProducts).add(products.get(i));
+        }
+        bulkRepository.insertAll(newProducts);  //sets the generated ids on the products
+        newProducts.forEach(product -> nameIndex.put(product.getId(), product.getName()));
+        newProducts.forEach(product -> changes.saved(ProductView.of(product)));
+        if (existingProducts.isEmpty()) {
+            return products;
+        }
+        Map<Integer, Product> stored = repository.findAllById(existingProducts.stream().map(Product::getId).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+        existingProducts.replaceAll(product -> onStoredRow(stored.get(product.getId()), product));
+        List<Product> updated = repository.saveAll(existingProducts); //this is an inbuilt methods given by jpa com.junming.spring_boot_crud_example.repository
+        cache.invalidateAll(updated);
+        updated.forEach(product -> nameIndex.put(product.getId(), product.getName()));
+        updated.forEach(product -> changes.saved(ProductView.of(product)));
+        List<Product> saved = new ArrayList<>(products.size());
+        int nextNew = 0;
+        int nextUpdated = 0;
+        for (boolean inserted : isNew) {
+            saved.add(inserted ? newProducts.get(nextNew++) : updated.get(nextUpdated++));
+        }
+        return saved;
+    }
+
+    /**
+     * Saving a product that carries an id overwrites the stored row, as it did before products had a version.
+     * The sent fields are copied onto the stored row, so the save carries the stored version instead of a stale 0.
+     * A client that does send a version gets a conflict if the row has moved on since. Unknown ids are inserted, also as before.
+     */
+    private static Product onStoredRow(Product stored, Product sent){
+        if (stored == null) {
+            return sent;
+        }
+        if (sent.getVersion() != 0 && sent.getVersion() != stored.getVersion()) {
+            throw new ObjectOptimisticLockingFailureException(Product.class, sent.getId());
+        }
+        stored.setName(sent.getName());
+        stored.setQuantity(sent.getQuantity());
+        stored.setPrice(sent.getPrice());
+        return stored;
     }
 
     /**
      * get methods to get list of product objects from database
      */
-    public List<Product> getProducts(){
-        return repository.findAll(); //this is an inbuilt methods given by jpa com.junming.spring_boot_crud_example.repository
+    @Timed(value = "product.service", extraTags = {"operation", "findAll"})
+    @ReplicaRead  //served by a read replica when routing is on, see ReadReplicaConfig
+    public List<ProductView> getProducts(){
+        return repository.findAllViews();  //read-only rows straight from the result set, no managed entities
+    }
+
+    /**
+     * a fingerprint of the whole table that changes on every write, read with one aggregate query instead of loading the products
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "catalogVersion"})
+    @ReplicaRead
+    public CatalogVersion getCatalogVersion(){
+        return repository.catalogVersion();
+    }
+
+    /**
+     * get methods to get one keyset page of products, ordered by id, starting after the given id
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "findPage"})
+    public List<ProductView> getProductsPage(int afterId, int limit){
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return repository.findViewsByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, size));
+    }
+
+    /**
+     * search method. Filters, sorts and limits in the database, never returning more than MAX_PAGE_SIZE products.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "search"})
+    public List<ProductView> searchProducts(ProductSearch search){
+        return repository.search(search, Math.max(1, Math.min(search.getLimit(), MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * type-ahead method. Prefix and fuzzy name matches from the in-memory index, no database access.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "suggest"})
+    public List<ProductSuggestion> suggestProducts(String query, int limit){
+        if (!nameIndexLoaded) {
+            loadNameIndex();
+        }
+        return nameIndex.suggest(query, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * entry counts and estimated memory of the name index
+     */
+    public Map<String, Object> getNameIndexStats(){
+        return nameIndex.stats();
+    }
+
+    /**
+     * (re)builds the name index from the database. Runs on the first suggestion, so an instance that never serves one
+     * (the reactive profile, a freshly scaled-out instance) does not scan the table at startup.
+     * Walks the table in keyset pages, so no transaction and no more than one page of entities is needed.
+     * Suggestions keep coming from the current index until the new one is complete, and writes during the walk are not lost.
+     */
+    public void rebuildNameIndex(){
+        nameIndex.rebuild(index -> {
+            List<Product> page = repository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, MAX_PAGE_SIZE));
+            while (!page.isEmpty()) {
+                page.forEach(product -> index.accept(product.getId(), product.getName()));
+                page = repository.findByIdGreaterThanOrderByIdAsc(page.get(page.size() - 1).getId(), PageRequest.of(0, MAX_PAGE_SIZE));
+            }
+        });
+    }
+
+    //the first suggestions wait for one load instead of each starting their own; a failed load is retried by the next one
+    private synchronized void loadNameIndex(){
+        if (!nameIndexLoaded) {
+            rebuildNameIndex();
+            nameIndexLoaded = true;
+        }
+    }
+
+    /**
+     * hands every product to the action one row at a time. Each entity is detached once it has been handled,
+     * so the persistence context (and the heap) stays flat no matter how big the table is.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "stream"})
+    @Transactional(readOnly = true)  //the stream holds an open cursor, so it has to live inside a transaction
+    public void forEachProduct(Consumer<Product> action){
+        try (Stream<Product> products = repository.streamAll()) {
+            products.forEach(product -> {
+                action.accept(product);
+                entityManager.detach(product);
+            });
+        }
     }
 
     /**
      * get methods to get specific product by id
      */
-    public Product getProductById(int id){
-        return repository.findById(id).orElse(null);
+    @Timed(value = "product.service", extraTags = {"operation", "findById"})
+    @ReplicaRead(fillsSharedCache = true)  //a miss is loaded into the cache every client reads
+    public ProductView getProductById(int id){
+        return cache.getById(id, key -> repository.findViewById(key).orElse(null));
     }
 
     /**
      * get methods to get specific product by name
      */
-    public Product getProductByName(String name){
-        return repository.findByName(name);  //this method is not an inbuilt method given by jpa repo.
-    }                                            // need to specify them in ProductRepository
+    @Timed(value = "product.service", extraTags = {"operation", "findByName"})
+    @ReplicaRead(fillsSharedCache = true)
+    public ProductView getProductByName(String name){
+        //findFirstByNameOrderByIdAsc is not an inbuilt method given by jpa repo. need to specify them in ProductRepository
+        return cache.getByName(name, key -> repository.findFirstByNameOrderByIdAsc(key).orElse(null));
+    }
+
+    /**
+     * hit, miss and eviction counters of the lookup cache
+     */
+    public Map<String, Object> getCacheStats(){
+        return cache.stats();
+    }
 
     /**
      * delete methods to delete specific product by id
      */
+    @Timed(value = "product.service", extraTags = {"operation", "delete"})
     public String deleteProduct(int id){
         repository.deleteById(id);
+        cache.invalidate(id);
+        nameIndex.remove(id);
+        changes.deleted(id);
         return "product removed || " +id;
     }
 
+    /**
+     * checks whether a product with this id exists, without loading it
+     */
+    public boolean productExists(int id){
+        return repository.existsById(id);
+    }
+
+    /**
+     * patch method. Changes only the fields set in the patch, with one UPDATE statement and no read first.
+     * Returns 1 if the product was updated, 0 if it does not exist or is no longer at patch.version.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "patch"})
+    public int patchProduct(int id, ProductPatch patch){
+        int updated = repository.patch(id, patch.getName(), patch.getQuantity(), patch.getPrice(), patch.getVersion());
+        cache.invalidate(id);
+        if (updated == 1 && patch.getName() != null) {
+            nameIndex.put(id, patch.getName());
+        }
+        if (updated == 1) {
+            changes.changed(id);
+        }
+        return updated;
+    }
+
+    /**
+     * patch method for many products at once, sent to the database as JDBC batches.
+     * Returns 1 or 0 per patch, in the order given, with the same meaning as patchProduct.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "patchAll"})
+    public int[] patchProducts(List<ProductPatch> patches){
+        int[] updated = bulkRepository.patchAll(patches);
+        for (int i = 0; i < patches.size(); i++) {
+            ProductPatch patch = patches.get(i);
+            cache.invalidate(patch.getId());
+            if (updated[i] == 1 && patch.getName() != null) {
+                nameIndex.put(patch.getId(), patch.getName());
+            }
+            if (updated[i] == 1) {
+                changes.changed(patch.getId());
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * adds delta (negative to take stock out) to the quantity of a product atomically in the database,
+     * or in memory for hot products, which are flushed to the database in batches
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "adjustQuantity"})
+    public QuantityUpdate adjustQuantity(int id, int delta){
+        if (quantityCoalescer.isHot(id)) {
+            return quantityCoalescer.add(id, delta) ? QuantityUpdate.QUEUED : QuantityUpdate.REJECTED;
+        }
+        int updated = repository.adjustQuantity(id, delta);
+        cache.invalidate(id);
+        if (updated == 1) {
+            changes.changed(id);
+        }
+        return updated == 1 ? QuantityUpdate.APPLIED : QuantityUpdate.REJECTED;
+    }
+
+    /**
+     * delete method for many products at once, set-based and in chunks. Returns how many products were deleted.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "deleteAll"})
+    public int deleteProducts(List<Integer> ids){
+        List<Integer> deleted = bulkRepository.deleteAll(ids);
+        ids.forEach(cache::invalidate);
+        deleted.forEach(nameIndex::remove);
+        deleted.forEach(changes::deleted);  //ids that never existed are no news
+        return deleted.size();
+    }
+
+    /**
+     * delete method for every product with fromId <= id <= toId. Returns how many products were deleted.
+     */
+    @Timed(value = "product.service", extraTags = {"operation", "deleteRange"})
+    public int deleteProductRange(int fromId, int toId){
+        int deleted = bulkRepository.deleteRange(fromId, toId);
+        cache.invalidateRange(fromId, toId);
+        nameIndex.removeRange(fromId, toId);
+        changes.reload();  //the deleted ids are not known here, so followers reload
+        return deleted;
+    }
+
     /**
      * put method. Getter and setter method in entity class gets used here
      */
+    @Timed(value = "product.service", extraTags = {"operation", "update"})
     public Product updateProduct(Product product){
          Product existingProduct = repository.findById(product.getId()).orElse(product);
          existingProduct.setName(product.getName());
          existingProduct.setQuantity(product.getQuantity());
          existingProduct.setPrice(product.getPrice());
-         return repository.save(existingProduct);
+         Product saved = repository.save(existingProduct);
+         cache.invalidate(saved.getId());
+         nameIndex.put(saved.getId(), saved.getName());
+         changes.saved(ProductView.of(saved));
+         return saved;
     }
 }
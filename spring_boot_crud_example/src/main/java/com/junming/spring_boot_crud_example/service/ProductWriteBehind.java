@@ -0,0 +1,190 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.entity.Product;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for single new products (POST /addProduct), only when product.write-behind.enabled=true.
+ *
+ * Instead of one transaction per product, callers put their product into a bounded queue and get a future. One writer thread takes
+ * what is queued and inserts it with the batched bulk insert of saveProducts, in one transaction, as soon as max-batch-size products
+ * are there or max-delay has passed since the first of them. The futures complete once that transaction has committed (with the
+ * generated ids), or fail together with it. So a caller is only acknowledged once its product is durable, and thousands of single
+ * inserts per second cost a few commits instead of thousands.
+ * A batch rejected for its data (one name too long for the column, say) is split in halves and retried, so only the products that
+ * break a constraint fail, as they would have on their own. Any other error (database down) fails the whole batch at once.
+ *
+ * A full queue pushes back: submit waits up to enqueue-timeout for room, then answers 503 so the producer slows down.
+ * Keep max-batch-size at or below product.bulk.chunk-size, or a batch is split over several transactions.
+ */
+@Component
+@ConditionalOnProperty(name = "product.write-behind.enabled", havingValue = "true")
+public class ProductWriteBehind implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductWriteBehind.class);
+
+    private final ProductService service;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long enqueueTimeoutNanos;
+    private final ExecutorService writer;
+    private volatile boolean running = true;
+    private DistributionSummary batchSizes;  //set by bindTo, null without a MeterRegistry
+
+    public ProductWriteBehind(ProductService service,
+                              @Value("${product.write-behind.capacity:10000}") int capacity,
+                              @Value("${product.write-behind.max-batch-size:500}") int maxBatchSize,
+                              @Value("${product.write-behind.max-delay:5ms}") Duration maxDelay,
+                              @Value("${product.write-behind.enqueue-timeout:50ms}") Duration enqueueTimeout) {
+        this.service = service;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.enqueueTimeoutNanos = enqueueTimeout.toNanos();
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.execute(this::writeBatches);
+    }
+
+    /**
+     * queues a new product (one without an id) for the next batch. The future completes with the saved product once its batch
+     * is committed. Throws 503 SERVICE_UNAVAILABLE when the queue stays full for enqueue-timeout.
+     */
+    public CompletableFuture<Product> submit(Product product) {
+        PendingWrite write = new PendingWrite(product);
+        boolean queued;
+        try {
+            queued = running && queue.offer(write, enqueueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many products waiting to be written, retry later");
+        }
+        return write.saved;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void writeBatches() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                while (batch.size() < maxBatchSize) {
+                    PendingWrite next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;  //max-delay has passed
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                running = false;  //shutdownNow: write what was taken already, then whatever is still queued
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        commit(batch);
+        if (batchSizes != null) {
+            batchSizes.record(batch.size());
+        }
+    }
+
+    //one transaction for the batch. If a product breaks a constraint, each half is retried, which finds k bad products in about
+    //2k log(n) commits and leaves every other product of the batch committed
+    private void commit(List<PendingWrite> batch) {
+        List<Product> products = new ArrayList<>(batch.size());
+        batch.forEach(write -> products.add(write.product));
+        try {
+            List<Product> saved = service.saveProducts(products);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).saved.complete(saved.get(i));
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                batch.get(0).saved.completeExceptionally(e);  //this product's own fault, nothing to log
+                return;
+            }
+            products.forEach(product -> product.setId(null));  //ids of inserts the failed transaction rolled back
+            int half = batch.size() / 2;
+            commit(batch.subList(0, half));
+            commit(batch.subList(half, batch.size()));
+        } catch (RuntimeException e) {
+            log.warn("Writing a batch of {} products failed", batch.size(), e);
+            batch.forEach(write -> write.saved.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.write-behind.queue.size", this, ProductWriteBehind::getQueueSize)
+                .description("New products waiting for the next group commit")
+                .register(registry);
+        batchSizes = DistributionSummary.builder("product.write-behind.batch.size")
+                .description("Products inserted per group commit")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;  //no new products; the writer commits what is queued and stops
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.forEach(write -> write.saved.completeExceptionally(new IllegalStateException("shutting down")));
+    }
+
+    private static final class PendingWrite {
+
+        final Product product;
+        final CompletableFuture<Product> saved = new CompletableFuture<>();
+
+        PendingWrite(Product product) {
+            this.product = product;
+        }
+    }
+}
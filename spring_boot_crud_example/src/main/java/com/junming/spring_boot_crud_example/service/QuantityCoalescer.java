@@ -0,0 +1,200 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Coalesces quantity deltas of very hot products in memory and writes their sum to the database every max-staleness,
+ * so a flash sale on one product costs one UPDATE per flush instead of one row lock per order.
+ *
+ * Only the ids listed in product.quantity.hot-ids are coalesced. Each of them has a striped counter: threads add to different
+ * stripes (AtomicLongArray slots), so they rarely contend on one cache line, and a flush drains every stripe with getAndSet(0),
+ * which never loses a concurrent add.
+ *
+ * The stock check happens in memory. Each hot product also keeps how much stock is available: its quantity in the database,
+ * read on first use, plus every accepted delta. A decrement that would take that below 0 is rejected, like on the direct path, and
+ * so is any delta for a product that does not exist. Every flush reads the rows it writes, so the budget also follows changes made
+ * by other paths (PUT, PATCH, imports). If such a change lowered the stock below what was already accepted, the flush sets the
+ * quantity to 0 and logs the shortfall. A product deleted meanwhile loses its pending deltas, and no change is published for it.
+ * The database is up to max-staleness behind.
+ */
+@Component
+public class QuantityCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuantityCoalescer.class);
+
+    private static final long UNLOADED = Long.MIN_VALUE;  //available stock not read yet, or the product was found deleted
+
+    private final ProductBulkRepository bulkRepository;
+    private final ProductCache cache;
+    private final ProductChangeFeed changes;
+    private final Map<Integer, HotProduct> pending;  //fixed at startup, so reads need no locking
+    private final int stripeMask;
+    private final ScheduledExecutorService flusher;
+
+    public QuantityCoalescer(ProductBulkRepository bulkRepository,
+                             ProductCache cache,
+                             ProductChangeFeed changes,
+                             @Value("${product.quantity.hot-ids:}") Set<Integer> hotIds,
+                             @Value("${product.quantity.max-staleness:200ms}") Duration maxStaleness) {
+        this.bulkRepository = bulkRepository;
+        this.cache = cache;
+        this.changes = changes;
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);  //next power of two >= cores
+        this.stripeMask = stripes - 1;
+        Map<Integer, HotProduct> counters = new HashMap<>();
+        for (Integer id : hotIds) {
+            counters.put(id, new HotProduct(stripes));
+        }
+        this.pending = Collections.unmodifiableMap(counters);
+        if (pending.isEmpty()) {
+            this.flusher = null;
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "quantity-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = maxStaleness.toMillis();
+            flusher.scheduleWithFixedDelay(this::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isHot(int id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Adds the delta to the in-memory counter of a hot product. It reaches the database with the next flush.
+     * Returns false, and adds nothing, when the product does not exist or has not enough stock left for a decrement.
+     */
+    public boolean add(int id, int delta) {
+        HotProduct product = pending.get(id);
+        if (product == null) {
+            throw new IllegalArgumentException("Product " + id + " is not configured as hot");
+        }
+        long available;
+        do {
+            available = product.available.get();
+            if (available == UNLOADED) {
+                available = load(id, product);
+                if (available == UNLOADED) {
+                    return false;  //no such product
+                }
+            }
+            if (delta < 0 && available + delta < 0) {
+                return false;
+            }
+        } while (!product.available.compareAndSet(available, available + delta));
+        product.stripes.addAndGet((int) Thread.currentThread().getId() & stripeMask, delta);
+        return true;
+    }
+
+    /**
+     * writes every non-zero pending delta to the database in one batch. If the write fails, the deltas are put back for the next flush.
+     */
+    public synchronized void flush() {
+        Map<Integer, Long> deltas = new HashMap<>();
+        pending.forEach((id, product) -> {
+            long sum = 0;
+            for (int i = 0; i < product.stripes.length(); i++) {
+                sum += product.stripes.getAndSet(i, 0);
+            }
+            if (sum != 0) {
+                deltas.put(id, sum);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> before;
+        try {
+            before = bulkRepository.adjustQuantities(deltas);
+        } catch (RuntimeException e) {
+            deltas.forEach((id, sum) -> pending.get(id).stripes.addAndGet(0, sum));
+            throw e;
+        } finally {
+            deltas.keySet().forEach(cache::invalidate);
+        }
+        deltas.forEach((id, sum) -> {
+            HotProduct product = pending.get(id);
+            Integer quantity = before.get(id);
+            if (quantity == null) {
+                log.warn("Dropped a pending quantity delta of {} for product {}, which no longer exists", sum, id);
+                product.available.set(UNLOADED);
+                return;
+            }
+            long after = Math.max(quantity + sum, 0);
+            if (quantity + sum < 0) {
+                log.warn("Product {} was {} short: its quantity was lowered directly after those decrements were accepted, set to 0",
+                        id, -(quantity + sum));
+            }
+            //whatever other paths wrote to the row since the last flush, and the shortfall, reach the budget here
+            product.available.addAndGet(after - (product.stored + sum));
+            product.stored = after;
+            changes.changed(id);
+        });
+    }
+
+    //reads the stock of a product on first use (or after it was found deleted); UNLOADED if it does not exist
+    private synchronized long load(int id, HotProduct product) {
+        long available = product.available.get();
+        if (available != UNLOADED) {
+            return available;  //another thread loaded it meanwhile
+        }
+        Integer quantity = bulkRepository.quantities(Collections.singleton(id)).get(id);
+        if (quantity == null) {
+            return UNLOADED;
+        }
+        product.stored = quantity;
+        product.available.set(quantity);
+        return quantity;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {  //an exception would cancel the schedule
+            log.warn("Flushing coalesced quantity deltas failed, retrying with the next flush", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushQuietly();  //do not lose what was accepted since the last flush
+        }
+    }
+
+    private static final class HotProduct {
+
+        final AtomicLongArray stripes;                          //deltas accepted since the last flush
+        final AtomicLong available = new AtomicLong(UNLOADED);  //stock left to take: the database quantity plus every pending delta
+        long stored;  //the quantity the database holds after the last flush or load. Guarded by the QuantityCoalescer lock.
+
+        HotProduct(int stripes) {
+            this.stripes = new AtomicLongArray(stripes);
+        }
+    }
+}
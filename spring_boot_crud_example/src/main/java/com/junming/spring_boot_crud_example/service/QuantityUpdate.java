@@ -0,0 +1,13 @@
+package com.junming.spring_boot_crud_example.service;
+
+/**
+ * Outcome of a quantity adjustment
+ */
+public enum QuantityUpdate {
+    /** written to the database */
+    APPLIED,
+    /** accepted into the in-memory counter of a hot product, written with the next flush */
+    QUEUED,
+    /** nothing changed: the product does not exist or there is not enough stock */
+    REJECTED
+}
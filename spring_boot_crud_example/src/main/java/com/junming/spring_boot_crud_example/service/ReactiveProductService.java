@@ -0,0 +1,71 @@
+package com.junming.spring_boot_crud_example.service;
+
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.repository.ReactiveProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The CRUD functions of ProductService for the reactive profile, on R2DBC instead of JPA.
+ * Same behaviour as the blocking ones, but without the ProductCache and the name index: in the reactive profile nothing reads them.
+ * Writes return ProductView, which is written to JSON exactly like the Product the blocking ones return.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductService {
+
+    @Autowired
+    private ReactiveProductRepository repository;
+
+    @Autowired
+    private TransactionalOperator transactions;
+
+    /**
+     * saves a new product, or overwrites the one with the same id like JPA's save() does
+     */
+    public Mono<ProductView> saveProduct(Product product){
+        if (product.getId() == null) {
+            return repository.insert(product);
+        }
+        return repository.update(product).switchIfEmpty(Mono.defer(() -> repository.insert(product)));
+    }
+
+    /**
+     * saves the products one after the other as they are read from the request, all in one transaction
+     */
+    public Flux<ProductView> saveProducts(Flux<Product> products){
+        return products.concatMap(this::saveProduct).as(transactions::transactional);
+    }
+
+    public Flux<ProductView> getProducts(){
+        return repository.findAll();
+    }
+
+    public Flux<ProductView> getProductsPage(int afterId, int limit){
+        return repository.findPage(afterId, Math.max(1, Math.min(limit, ProductService.MAX_PAGE_SIZE)));
+    }
+
+    public Mono<ProductView> getProductById(int id){
+        return repository.findById(id);
+    }
+
+    public Mono<ProductView> getProductByName(String name){
+        return repository.findFirstByName(name);
+    }
+
+    /**
+     * put method: overwrites name, quantity and price, or saves the product as a new one when its id does not exist (as ProductService does)
+     */
+    public Mono<ProductView> updateProduct(Product product){
+        return repository.update(product).switchIfEmpty(Mono.defer(() -> repository.insert(product)));
+    }
+
+    public Mono<String> deleteProduct(int id){
+        return repository.deleteById(id).thenReturn("product removed || " + id);
+    }
+}
@@ -0,0 +1,16 @@
+-- The product_tbl schema as ddl-auto=update creates it from the Product entity (MySQL5Dialect).
+-- A database that ddl-auto already created is baselined at version 1 (spring.flyway.baseline-on-migrate), so this script only runs on an empty one.
+-- From here on every schema change is a new V<n>__*.sql script, and the entity is only validated against it.
+create table product_tbl (
+    id integer not null auto_increment,
+    last_modified datetime,
+    name varchar(255),
+    price double precision,
+    quantity integer,
+    version bigint default 0 not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index idx_product_name on product_tbl (name);
+create index idx_product_price_quantity on product_tbl (price, quantity);
+create index idx_product_quantity_price on product_tbl (quantity, price);
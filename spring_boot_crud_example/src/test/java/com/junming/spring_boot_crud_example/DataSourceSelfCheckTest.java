@@ -0,0 +1,55 @@
+package com.junming.spring_boot_crud_example;
+
+import com.junming.spring_boot_crud_example.config.HikariPoolSizing;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts the application with the prod profile's pool sizing switched on, and reads the startup self-check back from /actuator/info.
+ * (The prod profile itself is not activated: its Connector/J properties mean nothing to H2.)
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"product.datasource.pool.auto-size=true", "spring.datasource.hikari.leak-detection-threshold=60000"})
+public class DataSourceSelfCheckTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private HikariPoolSizing sizing;
+
+    @Test
+    public void poolIsSizedFromCoresAndDatabaseLimit() throws Exception {
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+
+        assertThat(sizing.poolSize()).isEqualTo(Math.min(2 * Runtime.getRuntime().availableProcessors() + 1, 135));
+        assertThat(pool.getMaximumPoolSize()).isEqualTo(sizing.poolSize());
+        assertThat(pool.getMinimumIdle()).isEqualTo(sizing.poolSize());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void infoEndpointReportsEffectivePoolAndDriverSettings() {
+        Map<String, Object> info = restTemplate.getForObject("/actuator/info", Map.class);
+
+        Map<String, Object> datasource = (Map<String, Object>) info.get("datasource");
+        Map<String, Object> pool = (Map<String, Object>) datasource.get("pool");
+        Map<String, Object> driver = (Map<String, Object>) datasource.get("driver");
+        assertThat(pool.get("maximumPoolSize")).isEqualTo(sizing.poolSize());
+        assertThat(pool.get("leakDetectionThresholdMs")).isEqualTo(60000);
+        assertThat((String) driver.get("database")).startsWith("H2");
+        assertThat((Iterable<Object>) datasource.get("warnings")).isEmpty();
+    }
+}
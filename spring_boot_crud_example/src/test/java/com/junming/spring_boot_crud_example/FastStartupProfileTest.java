@@ -0,0 +1,44 @@
+package com.junming.spring_boot_crud_example;
+
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import springfox.documentation.spring.web.plugins.Docket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts the application with the fast-startup profile on its own, empty H2 database, so the schema can only come from the Flyway scripts.
+ * ddl-auto=validate makes Hibernate fail the start if the scripts and the Product entity disagree.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:faststartup;DB_CLOSE_DELAY=-1;MODE=MySQL",
+        "spring.jpa.hibernate.ddl-auto=validate"})
+@ActiveProfiles("fast-startup")
+public class FastStartupProfileTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void schemaFromMigrationsMatchesEntityAndServesRequests() {
+        assertThat(restTemplate.postForEntity("/addProduct", new Product(null, "iphone", 23, 800.00), String.class).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+
+        assertThat(restTemplate.getForObject("/products", String.class)).contains("\"name\":\"iphone\"");
+    }
+
+    @Test
+    public void swaggerIsLeftOut() {
+        assertThat(context.getBeansOfType(Docket.class)).isEmpty();
+    }
+}
@@ -1,11 +1,35 @@
 package com.junming.spring_boot_crud_example;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -24,6 +48,125 @@ public class HttpRequestTest {
     public void greetingShouldReturnDefaultMessage() throws Exception {
         assertThat(this.restTemplate.getForObject("http://localhost:" + port + "/", String.class)).isEqualTo("Hello to Product RestAPI");
     }
+
+    @Test
+    public void productListIsGzippedForClientsThatAcceptIt() throws Exception {
+        List<Map<String, Object>> products = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {  //enough JSON to pass server.compression.min-response-size
+            Map<String, Object> product = new HashMap<>();
+            product.put("name", "gzip-product-" + i);
+            product.put("quantity", i);
+            product.put("price", 1.0);
+            products.add(product);
+        }
+        this.restTemplate.postForObject("http://localhost:" + port + "/addProducts", products, String.class);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<byte[]> response = this.restTemplate.exchange("http://localhost:" + port + "/products",
+                HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeaders().getETag()).startsWith("W/\"catalog-");
+    }
+
+    @Test
+    public void productsCanBeSentAndReceivedAsSmile() throws Exception {
+        MediaType smile = MediaType.parseMediaType("application/x-jackson-smile");
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        List<Map<String, Object>> products = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> product = new HashMap<>();
+            product.put("name", "smile-product-" + i);
+            product.put("quantity", i);
+            product.put("price", 1.0);
+            products.add(product);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(smile);
+        headers.setAccept(Collections.singletonList(smile));
+
+        ResponseEntity<byte[]> added = this.restTemplate.exchange("http://localhost:" + port + "/addProducts",
+                HttpMethod.POST, new HttpEntity<>(smileMapper.writeValueAsBytes(products), headers), byte[].class);
+        ResponseEntity<byte[]> listed = this.restTemplate.exchange("http://localhost:" + port + "/products",
+                HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+
+        assertThat(added.getHeaders().getContentType()).isEqualTo(smile);
+        assertThat(listed.getHeaders().getContentType()).isEqualTo(smile);
+        List<Map<String, Object>> decoded = smileMapper.readValue(listed.getBody(), new TypeReference<List<Map<String, Object>>>() {});
+        List<Map<String, Object>> ours = decoded.stream()
+                .filter(product -> String.valueOf(product.get("name")).startsWith("smile-product-"))
+                .collect(Collectors.toList());
+        assertThat(ours).hasSize(2);
+        //the Smile mapper is configured like the JSON one, so dates are ISO strings there too
+        assertThat(ours.get(0).get("lastModified")).isInstanceOf(String.class);
+    }
+
+    @Test
+    public void postWithId_afterAnUpdate_stillOverwritesTheProduct() throws Exception {
+        String base = "http://localhost:" + port;
+        Map<?, ?> added = this.restTemplate.postForObject(base + "/addProduct", Collections.singletonMap("name", "upsert-product"), Map.class);
+        Map<String, Object> product = new HashMap<>();
+        product.put("id", added.get("id"));
+        product.put("name", "upsert-product-v1");
+        product.put("quantity", 1);
+        product.put("price", 1.0);
+        this.restTemplate.put(base + "/update", product);  //now at version 1, the bodies below send none
+
+        product.put("name", "upsert-product-v2");
+        ResponseEntity<Map> single = this.restTemplate.postForEntity(base + "/addProduct", product, Map.class);
+        product.put("name", "upsert-product-v3");
+        ResponseEntity<List> list = this.restTemplate.postForEntity(base + "/addProducts", Collections.singletonList(product), List.class);
+        product.put("version", 1);  //stale: the two saves above moved it on
+        ResponseEntity<String> stale = this.restTemplate.postForEntity(base + "/addProduct", product, String.class);
+
+        assertThat(single.getStatusCodeValue()).isEqualTo(200);
+        assertThat(single.getBody().get("version")).isEqualTo(2);
+        assertThat(list.getStatusCodeValue()).isEqualTo(200);
+        assertThat(stale.getStatusCodeValue()).isEqualTo(409);
+        Map<?, ?> stored = this.restTemplate.getForObject(base + "/productById/" + added.get("id"), Map.class);
+        assertThat(stored.get("name")).isEqualTo("upsert-product-v3");
+        assertThat(stored.get("version")).isEqualTo(3);
+    }
+
+    @Test
+    public void longPollOnChangeFeed_answersWhenAProductIsAdded() throws Exception {
+        String feed = "http://localhost:" + port + "/products/changes";
+        String cursor = (String) this.restTemplate.getForObject(feed, Map.class).get("next");
+
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+        writer.schedule(() -> this.restTemplate.postForObject("http://localhost:" + port + "/addProduct",
+                Collections.singletonMap("name", "long-poll-product"), String.class), 300, TimeUnit.MILLISECONDS);
+        Map<?, ?> page = this.restTemplate.getForObject(feed + "?after={after}", Map.class, cursor);  //waits for the write
+        writer.shutdown();
+
+        assertThat(page.get("resync")).isEqualTo(false);
+        List<?> changes = (List<?>) page.get("changes");
+        Map<?, ?> change = (Map<?, ?>) changes.get(changes.size() - 1);
+        assertThat(change.get("type")).isEqualTo("SAVED");
+        assertThat(((Map<?, ?>) change.get("product")).get("name")).isEqualTo("long-poll-product");
+        assertThat(page.get("next")).isNotEqualTo(cursor);
+    }
+
+    @Test
+    public void changeFeedStream_sendsAServerSentEventPerChange() throws Exception {
+        HttpURLConnection stream = (HttpURLConnection) new URL("http://localhost:" + port + "/products/changes/stream").openConnection();
+        stream.setReadTimeout(10_000);
+        stream.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(stream.getResponseCode()).isEqualTo(200);
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(stream.getInputStream(), StandardCharsets.UTF_8))) {
+            this.restTemplate.postForObject("http://localhost:" + port + "/addProduct",
+                    Collections.singletonMap("name", "sse-product"), String.class);
+            List<String> event = new ArrayList<>();
+            for (String line = events.readLine(); line != null && !line.contains("sse-product"); line = events.readLine()) {
+                event.add(line);
+            }
+            assertThat(event).contains("event:SAVED");
+            assertThat(event.get(event.size() - 1)).startsWith("id:");
+        } finally {
+            stream.disconnect();
+        }
+    }
 }
 
 //Another useful approach is to not start the server at all but to test only the layer below that, where Spring handles the incoming HTTP request and hands it off to your controller.
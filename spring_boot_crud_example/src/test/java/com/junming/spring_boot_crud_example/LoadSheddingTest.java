@@ -0,0 +1,91 @@
+package com.junming.spring_boot_crud_example;
+
+import com.junming.spring_boot_crud_example.config.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The whole filter chain with a tiny read budget: two reads at once, then one every 100 seconds, per client.
+ */
+@SpringBootTest(properties = {"product.load-shedding.enabled=true", "product.ratelimit.read.rate=0.01", "product.ratelimit.read.burst=2", "product.ratelimit.api-keys=script,dashboard"})
+@AutoConfigureMockMvc
+public class LoadSheddingTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void clientOverItsRate_getsTooManyRequests_otherClientsDoNot() throws Exception {
+        double rejectedBefore = rejectedReads();
+        mockMvc.perform(get("/products").header("X-API-Key", "script")).andExpect(status().isOk());
+        mockMvc.perform(get("/products").header("X-API-Key", "script")).andExpect(status().isOk());
+        mockMvc.perform(get("/products").header("X-API-Key", "script"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "100"));
+
+        mockMvc.perform(get("/products").header("X-API-Key", "dashboard")).andExpect(status().isOk());
+        mockMvc.perform(get("/actuator/health").header("X-API-Key", "script")).andExpect(status().isOk());
+        assertThat(rejectedReads() - rejectedBefore).isEqualTo(1.0);
+    }
+
+    @Test
+    public void unknownKeys_shareTheBucketOfTheirAddress() throws Exception {
+        mockMvc.perform(get("/products").header("X-API-Key", "made-up-1")).andExpect(status().isOk());
+        mockMvc.perform(get("/products").header("X-API-Key", "made-up-2")).andExpect(status().isOk());
+        mockMvc.perform(get("/products").header("X-API-Key", "made-up-3")).andExpect(status().isTooManyRequests());
+        mockMvc.perform(get("/products")).andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    public void concurrencyLimit_dropsWhenDatabaseSlowsDown_andRecovers() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 200, 2.0);
+        for (int i = 0; i < 300; i++) {
+            runAtLimit(limiter, 50);
+        }
+        int healthy = limiter.getLimit();
+        assertThat(healthy).isBetween(50, 150);  //about tolerance times what the database runs without queueing
+
+        //the database now only keeps up with 10 concurrent queries
+        for (int i = 0; i < 100; i++) {
+            runAtLimit(limiter, 10);
+        }
+        assertThat(limiter.getLimit()).isBetween(10, 30);
+        assertThat(limiter.getInFlight()).isZero();
+
+        for (int i = 0; i < 300; i++) {
+            runAtLimit(limiter, 50);
+        }
+        assertThat(limiter.getLimit()).isBetween(50, 150);
+    }
+
+    private double rejectedReads() {
+        return registry.get("product.http.rejected").tag("reason", "rate_limit").tag("endpoint", "read").counter().count();
+    }
+
+    //admits as many requests as the limiter allows, then completes them all with the latency a database running
+    //capacity queries at a time (5 ms each) would give them
+    private static void runAtLimit(AdaptiveConcurrencyLimiter limiter, int capacity) {
+        int admitted = 0;
+        while (admitted < 1000 && limiter.tryAcquire()) {
+            admitted++;
+        }
+        long latency = TimeUnit.MILLISECONDS.toNanos(5) * Math.max(admitted, capacity) / capacity;
+        for (int i = 0; i < admitted; i++) {
+            limiter.release(latency);
+        }
+    }
+}
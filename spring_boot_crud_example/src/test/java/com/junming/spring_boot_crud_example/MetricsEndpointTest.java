@@ -0,0 +1,41 @@
+package com.junming.spring_boot_crud_example;
+
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Calls the service and then scrapes /actuator/prometheus the way Prometheus would.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@AutoConfigureMetrics  //metrics export is switched off in tests unless asked for
+public class MetricsEndpointTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ProductService service;
+
+    @Test
+    public void prometheusEndpointExposesProductMetrics() throws Exception {
+        service.saveProducts(Arrays.asList(new Product(null, "iphone", 23, 800.00), new Product(null, "ipod", 27, 400.00)));
+        service.getProducts();
+
+        String scrape = restTemplate.getForObject("/actuator/prometheus", String.class);
+
+        assertThat(scrape).contains("product_service_seconds_count{", "operation=\"findAll\"", "operation=\"saveAll\"");
+        assertThat(scrape).contains("product_service_seconds{", "quantile=\"0.99\"");
+        assertThat(scrape).contains("product_rows_sum{operation=\"saveAll\",} 2.0");
+        assertThat(scrape).contains("hikaricp_connections_max", "hibernate_statements_total");
+    }
+}
@@ -0,0 +1,80 @@
+package com.junming.spring_boot_crud_example;
+
+import com.junming.spring_boot_crud_example.controller.ProductController;
+import com.junming.spring_boot_crud_example.entity.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts the application with the reactive profile: WebFlux on Netty, R2DBC on an H2 database of its own (JPA creates the schema in it).
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive;DB_CLOSE_DELAY=-1;MODE=MySQL",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive?options=DB_CLOSE_DELAY=-1;MODE=MySQL",
+        "spring.r2dbc.username=sa"})
+@ActiveProfiles("reactive")
+public class ReactiveProfileTest {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void crudRoutesWorkOnR2dbc() {
+        Product saved = client.post().uri("/addProduct").bodyValue(new Product(null, "iphone", 23, 800.00))
+                .exchange().expectStatus().isOk().expectBody(Product.class).returnResult().getResponseBody();
+        assertThat(saved.getId()).isNotNull();
+
+        String etag = client.get().uri("/productById/{id}", saved.getId()).exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.name").isEqualTo("iphone").jsonPath("$.version").isEqualTo(0)
+                .returnResult().getResponseHeaders().getETag();
+        client.get().uri("/productById/{id}", saved.getId()).header("If-None-Match", etag).exchange().expectStatus().isNotModified();
+
+        client.put().uri("/update").bodyValue(new Product(saved.getId(), "iphone", 20, 750.00)).exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.quantity").isEqualTo(20).jsonPath("$.version").isEqualTo(1);
+        client.get().uri("/product/iphone").exchange().expectBody().jsonPath("$.price").isEqualTo(750.00);
+
+        client.delete().uri("/delete/{id}", saved.getId()).exchange()
+                .expectStatus().isOk().expectBody(String.class).isEqualTo("product removed || " + saved.getId());
+        client.get().uri("/productById/{id}", saved.getId()).exchange().expectStatus().isOk().expectBody().isEmpty();
+    }
+
+    @Test
+    public void productsStreamAsNdjson() {
+        client.post().uri("/addProducts")
+                .bodyValue(Arrays.asList(new Product(null, "ipod", 27, 400.00), new Product(null, "imac", 31, 2500.00)))
+                .exchange().expectStatus().isOk();
+
+        Flux<Product> products = client.get().uri("/products").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Product.class).getResponseBody();
+        StepVerifier.create(products.map(Product::getName).filter(name -> !name.equals("iphone")))
+                .expectNext("ipod", "imac")
+                .verifyComplete();
+    }
+
+    @Test
+    public void runsOnNettyWithoutTheServletControllers() {
+        assertThat(((ReactiveWebServerApplicationContext) context).getWebServer()).isInstanceOf(NettyWebServer.class);
+        assertThat(context.getBeansOfType(ProductController.class)).isEmpty();
+    }
+}
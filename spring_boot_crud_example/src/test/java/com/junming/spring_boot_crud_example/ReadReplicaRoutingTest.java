@@ -0,0 +1,148 @@
+package com.junming.spring_boot_crud_example;
+
+import com.junming.spring_boot_crud_example.config.DataSourceRouting;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ProductCache;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import javax.servlet.http.Cookie;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Replica routing against three in-memory H2 databases: the primary, and two "replicas" that are never replicated to.
+ * Each database holds a product 1 with a different name, so the name shows which database a read went to.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReadReplicaRoutingTest.PRIMARY,
+        "product.datasource.routing.enabled=true",
+        "product.datasource.replica-urls=" + ReadReplicaRoutingTest.REPLICA_0 + "," + ReadReplicaRoutingTest.REPLICA_1,
+        "product.datasource.read-your-writes-window=300ms"
+})
+@AutoConfigureMockMvc
+public class ReadReplicaRoutingTest {
+
+    static final String PRIMARY = "jdbc:h2:mem:routing_primary;DB_CLOSE_DELAY=-1;MODE=MySQL";
+    static final String REPLICA_0 = "jdbc:h2:mem:routing_replica_0;DB_CLOSE_DELAY=-1;MODE=MySQL";
+    static final String REPLICA_1 = "jdbc:h2:mem:routing_replica_1;DB_CLOSE_DELAY=-1;MODE=MySQL";
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ProductService service;
+
+    @Autowired
+    ProductCache cache;
+
+    @Autowired
+    DataSourceRouting routing;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        seed(PRIMARY, "on primary");
+        seed(REPLICA_0, "on replica 0");
+        seed(REPLICA_1, "on replica 1");
+        cache.invalidate(1);
+        Thread.sleep(350);  //let the read-your-writes window of earlier writes run out
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        routing.endRequest();  //writes made on the test thread itself leave it sticky, as within a request
+    }
+
+    @Test
+    public void replicaReads_areSpreadRoundRobin()
+    {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            names.add(service.getProducts().get(0).getName());
+        }
+
+        assertThat(names).containsExactlyInAnyOrder("on replica 0", "on replica 1");
+    }
+
+    @Test
+    public void unmarkedReads_goToPrimary()
+    {
+        List<ProductView> page = service.getProductsPage(0, 10);
+
+        assertThat(page.get(0).getName()).isEqualTo("on primary");
+    }
+
+    @Test
+    public void afterAWrite_cacheFillsReadPrimary()
+    {
+        assertThat(service.getProductById(1).getName()).startsWith("on replica");
+        cache.invalidate(1);
+
+        service.saveProduct(new Product(null, "new", 1, 1.0));
+
+        assertThat(service.getProductById(1).getName()).isEqualTo("on primary");
+    }
+
+    @Test
+    public void writingClient_readsItsWritesFromPrimary() throws Exception
+    {
+        MvcResult write = mockMvc.perform(MockMvcRequestBuilders.post("/addProduct")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"ipad\",\"quantity\":5,\"price\":600.0}"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().exists(DataSourceRouting.STICKY_COOKIE))
+                .andReturn();
+        Cookie sticky = write.getResponse().getCookie(DataSourceRouting.STICKY_COOKIE);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").cookie(sticky))
+                .andExpect(jsonPath("$[*].name", hasItem("ipad")));
+        //everybody else may still read a replica, which has not seen the write
+        mockMvc.perform(MockMvcRequestBuilders.get("/products"))
+                .andExpect(jsonPath("$[*].name", not(hasItem("ipad"))));
+    }
+
+    @Test
+    public void madeUpCookie_doesNotPinReadsToPrimary() throws Exception
+    {
+        MvcResult write = mockMvc.perform(MockMvcRequestBuilders.post("/addProduct")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"ipad\",\"quantity\":5,\"price\":600.0}"))
+                .andReturn();
+        String signature = write.getResponse().getCookie(DataSourceRouting.STICKY_COOKIE).getValue().split("\\.")[1];
+
+        //forever, unsigned or with a signature made for another value
+        for (String forged : new String[] {Long.toString(Long.MAX_VALUE), Long.MAX_VALUE + "." + signature}) {
+            mockMvc.perform(MockMvcRequestBuilders.get("/products").cookie(new Cookie(DataSourceRouting.STICKY_COOKIE, forged)))
+                    .andExpect(jsonPath("$[*].name", not(hasItem("ipad"))));
+        }
+    }
+
+    private static void seed(String url, String name)
+    {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+        jdbc.execute("create table if not exists product_tbl (id int auto_increment primary key, name varchar(255), quantity int, "
+                + "price double, version bigint default 0 not null, last_modified timestamp)");
+        jdbc.update("delete from product_tbl");
+        jdbc.update("insert into product_tbl (id, name, quantity, price, version) values (1, ?, 1, 1.0, 0)", name);
+    }
+}
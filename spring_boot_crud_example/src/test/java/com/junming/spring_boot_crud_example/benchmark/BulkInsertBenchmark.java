@@ -0,0 +1,61 @@
+package com.junming.spring_boot_crud_example.benchmark;
+
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compares rows/sec of the old /addProducts path (repository.saveAll, one INSERT per row) with the batched bulk insert.
+ * The class name does not end in Test, so surefire skips it in a normal build. Run it on its own with:
+ *   mvn test -Dtest=BulkInsertBenchmark -Dbenchmark.rows=50000
+ * It runs against the embedded H2 database of the tests. Point spring.datasource.url at a MySQL instance
+ * (with rewriteBatchedStatements=true) to get numbers that mean something for production.
+ */
+@SpringBootTest
+public class BulkInsertBenchmark {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 20000);
+    private static final int ROUNDS = 3;
+
+    @Autowired
+    ProductRepository repository;
+
+    @Autowired
+    ProductBulkRepository bulkRepository;
+
+    @Test
+    public void compareSaveAllWithBulkInsert()
+    {
+        run("repository.saveAll", repository::saveAll);  //the first rounds of each path also warm up the JIT
+        run("bulkRepository.insertAll", bulkRepository::insertAll);
+    }
+
+    private void run(String name, Consumer<List<Product>> insert)
+    {
+        for (int round = 1; round <= ROUNDS; round++) {
+            List<Product> products = products();
+            long start = System.nanoTime();
+            insert.accept(products);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-26s round %d: %,d rows in %,d ms = %,.0f rows/sec%n",
+                    name, round, ROWS, elapsed / 1_000_000, ROWS / (elapsed / 1e9));
+            repository.deleteAllInBatch();
+        }
+    }
+
+    private static List<Product> products()
+    {
+        List<Product> products = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            products.add(new Product(null, "product-" + i, i % 1000, 9.99 + i));
+        }
+        return products;
+    }
+}
@@ -0,0 +1,70 @@
+package com.junming.spring_boot_crud_example.controllertest;
+
+import com.junming.spring_boot_crud_example.controller.AsyncProductController;
+import com.junming.spring_boot_crud_example.controller.ProductAsyncExecutor;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+//The async controller only exists when product.async.enabled=true. max-in-flight=1 makes the second concurrent request overflow.
+@WebMvcTest(value = AsyncProductController.class, properties = {"product.async.enabled=true", "product.async.max-in-flight=1"})
+@Import(ProductAsyncExecutor.class)
+public class AsyncProductControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    ProductService productService;
+
+    ProductView RECORD_1 = new ProductView(1, "iphone", 23, 800.00, 0L, null);
+
+    @Test
+    public void getProductById_runsOnExecutor() throws Exception
+    {
+        Mockito.when(productService.getProductById(1)).thenReturn(RECORD_1);
+
+        //the handler returns a CompletableFuture, so the result is only written on the second (async) dispatch
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/async/productById/1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("iphone")));
+    }
+
+    @Test
+    public void requestAboveMaxInFlight_isRejectedWith503() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(productService.getProductById(1)).thenAnswer(invocation -> {
+            release.await();  //hold the only permit until the second request has been rejected
+            return RECORD_1;
+        });
+
+        MvcResult first = mockMvc.perform(MockMvcRequestBuilders.get("/async/productById/1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/async/productById/1"))
+                .andExpect(status().isServiceUnavailable());
+
+        release.countDown();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(first))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,51 @@
+package com.junming.spring_boot_crud_example.controllertest;
+
+import com.junming.spring_boot_crud_example.controller.ProductChangeController;
+import com.junming.spring_boot_crud_example.service.ProductChangeFeed;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ProductChangeController.class)
+@Import(ProductChangeFeed.class)
+@TestPropertySource(properties = "product.changes.max-subscribers=1")
+public class ProductChangeControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ProductChangeFeed feed;
+
+    @Test
+    public void waitingLongPolls_countTowardsMaxSubscribers() throws Exception
+    {
+        String cursor = feed.cursor();
+        MvcResult waiting = mockMvc.perform(get("/products/changes").param("after", cursor))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(get("/products/changes").param("after", cursor)).andExpect(status().isServiceUnavailable());
+        mockMvc.perform(get("/products/changes/stream")).andExpect(status().isServiceUnavailable());
+        mockMvc.perform(get("/products/changes")).andExpect(status().isOk());  //answered at once, never waits
+
+        feed.changed(1);
+        waiting.getAsyncResult(5000);
+        mockMvc.perform(asyncDispatch(waiting))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes[0].id").value(1));
+
+        //the answered poll gave its place back
+        mockMvc.perform(get("/products/changes").param("after", feed.cursor())).andExpect(request().asyncStarted());
+    }
+}
@@ -2,9 +2,19 @@ package com.junming.spring_boot_crud_example.controllertest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.junming.spring_boot_crud_example.controller.ProductController;
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+import com.junming.spring_boot_crud_example.dto.ImportResult;
+import com.junming.spring_boot_crud_example.dto.InventoryReport;
+import com.junming.spring_boot_crud_example.dto.ProductPatch;
+import com.junming.spring_boot_crud_example.dto.ProductSearch;
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import com.junming.spring_boot_crud_example.dto.ProductView;
 import com.junming.spring_boot_crud_example.entity.Product;
 import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import com.junming.spring_boot_crud_example.service.InventoryAnalytics;
+import com.junming.spring_boot_crud_example.service.ProductCatalogService;
 import com.junming.spring_boot_crud_example.service.ProductService;
+import com.junming.spring_boot_crud_example.service.QuantityUpdate;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,15 +22,21 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
 
 
 //Using this annotation will disable full auto-configuration and instead apply only configuration relevant to MVC tests
@@ -40,16 +56,27 @@ public class ProductControllerTest {
     //use @MockBean to create and inject a mock for the ProductService(if you do not do so, the application context cannot start), and we set its expectations using Mockito.
     //Mocking is the act of removing external dependencies from a unit test in order to create a controlled environment around it.
 
+    @MockBean
+    ProductCatalogService catalogService;
+
+    @MockBean
+    InventoryAnalytics inventoryAnalytics;
+
 
     Product RECORD_1 = new Product(1, "iphone", 23, 800.00);
     Product RECORD_2 = new Product(2, "ipod", 27, 400.00);
     Product RECORD_3 = new Product(3, "imac", 31, 2500.00);
+    ProductView VIEW_1 = ProductView.of(RECORD_1);  //what the GET endpoints return
+    ProductView VIEW_2 = ProductView.of(RECORD_2);
+    ProductView VIEW_3 = ProductView.of(RECORD_3);
+    CatalogVersion CATALOG = new CatalogVersion(3, 3, 0L);
 
     @Test
     public void findAllProducts_success() throws Exception
     {
-        List<Product> records = new ArrayList<>(Arrays.asList(RECORD_1, RECORD_2, RECORD_3));
+        List<ProductView> records = new ArrayList<>(Arrays.asList(VIEW_1, VIEW_2, VIEW_3));
 
+        Mockito.when(productService.getCatalogVersion()).thenReturn(CATALOG);
         Mockito.when(productService.getProducts()).thenReturn(records);
         //With Mockito, you create a mock, tell Mockito what to do when specific methods are called on it, and then use the mock instance in your test instead of the real thing. After the test, you can query the mock to see what specific
         //methods were called or check the side effects in the form of changed state.
@@ -71,10 +98,188 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$[2].name", is("imac")));
     }
 
+    @Test
+    public void findProductsPage_success() throws Exception
+    {
+        Mockito.when(productService.getProductsPage(1, 2)).thenReturn(Arrays.asList(VIEW_2, VIEW_3));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/products/page?after=1&limit=2")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(2)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void streamProducts_ndjson_success() throws Exception
+    {
+        //forEachProduct is void, so instead of thenReturn we tell the mock to feed our records to whatever consumer the controller passes in
+        Mockito.doAnswer(invocation -> {
+            Consumer<Product> action = invocation.getArgument(0);
+            Arrays.asList(RECORD_1, RECORD_2, RECORD_3).forEach(action);
+            return null;
+        }).when(productService).forEachProduct(any(Consumer.class));
+
+        //StreamingResponseBody is written on an async thread, so the request has to be dispatched a second time to collect the body
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/products/stream")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        mapper.writeValueAsString(RECORD_1) + "\n"
+                        + mapper.writeValueAsString(RECORD_2) + "\n"
+                        + mapper.writeValueAsString(RECORD_3) + "\n"));
+    }
+
+    @Test
+    public void patchProduct_success() throws Exception
+    {
+        ProductPatch patch = ProductPatch.builder().price(850.00).version(0L).build();
+        Mockito.when(productService.patchProduct(1, patch)).thenReturn(1);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/product/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.mapper.writeValueAsString(patch)))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    public void patchProduct_staleVersion_conflict() throws Exception
+    {
+        ProductPatch patch = ProductPatch.builder().price(850.00).version(0L).build();
+        Mockito.when(productService.patchProduct(1, patch)).thenReturn(0);
+        Mockito.when(productService.productExists(1)).thenReturn(true);  //the row is there, so it was the version that did not match
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/product/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(this.mapper.writeValueAsString(patch)))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void decrementQuantity_outOfStock_conflict() throws Exception
+    {
+        Mockito.when(productService.adjustQuantity(1, -5)).thenReturn(QuantityUpdate.REJECTED);
+        Mockito.when(productService.productExists(1)).thenReturn(true);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/product/1/decrement?by=5"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void adjustQuantity_byNotPositive_badRequest() throws Exception
+    {
+        mockMvc.perform(MockMvcRequestBuilders.post("/product/1/increment?by=-5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/product/1/decrement?by=-2147483648"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/product/1/decrement?by=0"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(productService, Mockito.never()).adjustQuantity(Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    public void deleteProducts_success() throws Exception
+    {
+        Mockito.when(productService.deleteProducts(Arrays.asList(1, 2, 3))).thenReturn(3);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/deleteProducts")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2,3]"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3"));
+    }
+
+    @Test
+    public void deleteProductRange_invertedRange_badRequest() throws Exception
+    {
+        mockMvc.perform(MockMvcRequestBuilders.delete("/deleteProducts?from=10&to=1"))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(productService, Mockito.never()).deleteProductRange(Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    public void searchProducts_bindsQueryParameters() throws Exception
+    {
+        ProductSearch expected = ProductSearch.builder().namePrefix("ip").minPrice(100.0).sort("price").limit(5).build();
+        Mockito.when(productService.searchProducts(expected)).thenReturn(Arrays.asList(new ProductView(1, "iphone", 23, 800.00, 0L, null)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/search?namePrefix=ip&minPrice=100&sort=price&limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].name", is("iphone")));
+    }
+
+    @Test
+    public void searchProducts_unknownSortField_badRequest() throws Exception
+    {
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/search?sort=version"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void suggestProducts_success() throws Exception
+    {
+        Mockito.when(productService.suggestProducts("iph", 10)).thenReturn(Arrays.asList(new ProductSuggestion(1, "iphone")));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/suggest?q=iph"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].name", is("iphone")));
+    }
+
+    @Test
+    public void importProductsCsv_returnsLineErrors() throws Exception
+    {
+        Mockito.when(catalogService.importCsv(any())).thenReturn(
+                new ImportResult(1, 1, Arrays.asList(new ImportResult.LineError(3, "name is required"))));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/products/import")
+                        .contentType("text/csv")
+                        .content("name,quantity,price\niphone,23,800.0\n,1,1.0\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(3)));
+    }
+
+    @Test
+    public void findAllProducts_unchangedCatalog_notModifiedWithoutLoadingProducts() throws Exception
+    {
+        Mockito.when(productService.getCatalogVersion()).thenReturn(CATALOG);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products").header("If-None-Match", CATALOG.toETag()))
+                .andExpect(status().isNotModified());
+
+        Mockito.verify(productService, Mockito.never()).getProducts();
+    }
+
+    @Test
+    public void getProductById_sendsETagAndHonoursIfNoneMatch() throws Exception
+    {
+        Mockito.when(productService.getProductById(1)).thenReturn(VIEW_1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/productById/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-0\""))
+                .andExpect(header().string("Cache-Control", "no-cache"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/productById/1").header("If-None-Match", "\"1-0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
     @Test
     public void getProductById_success() throws Exception
     {
-        Mockito.when(productService.getProductById(RECORD_1.getId())).thenReturn(RECORD_1);
+        Mockito.when(productService.getProductById(RECORD_1.getId())).thenReturn(VIEW_1);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/productById/1")
@@ -84,6 +289,15 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$.name", is("iphone")));
     }
 
+    @Test
+    public void productView_isWrittenExactlyLikeTheEntity() throws Exception
+    {
+        //ProductViewSerializer replaces the reflective bean serializer, clients must not see a difference
+        Product product = new Product(7, "say \"hi\"", null, 9.99, 3L, Instant.parse("2021-07-01T10:15:30.123Z"));
+
+        assertThat(mapper.writeValueAsString(ProductView.of(product))).isEqualTo(mapper.writeValueAsString(product));
+    }
+
     @Test
     public void addProduct_success() throws Exception
     {
@@ -105,4 +319,18 @@ public class ProductControllerTest {
                 .andExpect(jsonPath("$", notNullValue()))
                 .andExpect(jsonPath("$.name", is("Magic keyboard")));
     }
+
+    @Test
+    public void inventoryReport_success() throws Exception
+    {
+        InventoryReport report = new InventoryReport(Instant.EPOCH, 3, 81, 106_000.00, 25, 2, 0, 0,
+                Collections.singletonList(new InventoryReport.PriceBucket(400.00, 2500.00, 3)));
+        Mockito.when(inventoryAnalytics.report(25, 1)).thenReturn(report);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/products/analytics?lowStock=25&buckets=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalStockValue", is(106_000.00)))
+                .andExpect(jsonPath("$.lowStockCount", is(2)))
+                .andExpect(jsonPath("$.priceHistogram[0].count", is(3)));
+    }
 }
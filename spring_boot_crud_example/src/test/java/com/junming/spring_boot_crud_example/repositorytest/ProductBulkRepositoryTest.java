@@ -0,0 +1,143 @@
+package com.junming.spring_boot_crud_example.repositorytest;
+
+import com.junming.spring_boot_crud_example.dto.ProductPatch;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+//@DataJpaTest does not pick up plain @Repository classes, so the bulk repository (and the JdbcTemplate it needs) are added by hand
+@DataJpaTest
+@Import(ProductBulkRepository.class)
+@ImportAutoConfiguration(JdbcTemplateAutoConfiguration.class)
+@TestPropertySource(properties = {"product.bulk.batch-size=3", "product.bulk.chunk-size=7"})
+public class ProductBulkRepositoryTest {
+
+    @Autowired
+    ProductBulkRepository bulkRepository;
+
+    @Autowired
+    ProductRepository repository;
+
+    @Test
+    public void insertAll_insertsEveryRowAndReturnsGeneratedIds()
+    {
+        //20 rows with a batch of 3 and a chunk of 7 also covers the short last batch and the short last chunk
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(new Product(null, "product-" + i, i, i * 1.5));
+        }
+
+        bulkRepository.insertAll(products);
+
+        assertThat(repository.count()).isEqualTo(20);
+        for (Product product : products) {
+            assertThat(product.getId()).isNotNull();
+            assertThat(repository.findById(product.getId()).get().getName()).isEqualTo(product.getName());
+        }
+    }
+
+    @Test
+    public void deleteAllAndDeleteRange_deleteInChunksAndCountRows()
+    {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(new Product(null, "product-" + i, i, i * 1.5));
+        }
+        bulkRepository.insertAll(products);
+        int first = products.get(0).getId();
+
+        //8 ids (and a missing one) with a chunk of 7 takes two statements
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ids.add(first + i);
+        }
+        ids.add(-1);
+        assertThat(bulkRepository.deleteAll(ids)).containsExactlyInAnyOrderElementsOf(ids.subList(0, 8));
+
+        //the range overlaps the already deleted ids, which are simply not counted
+        assertThat(bulkRepository.deleteRange(first + 5, first + 14)).isEqualTo(7);
+        assertThat(repository.count()).isEqualTo(5);
+    }
+
+    @Test
+    public void deleteRange_overTheWholeIdSpace_walksTheRowsNotTheIds()
+    {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(new Product(null, "product-" + i, i, i * 1.5));
+        }
+        bulkRepository.insertAll(products);
+
+        //one id per statement would take hundreds of millions of statements; three chunks of 7 rows finish at once
+        assertThat(bulkRepository.deleteRange(1, Integer.MAX_VALUE)).isEqualTo(20);
+        assertThat(repository.count()).isZero();
+        assertThat(bulkRepository.deleteRange(Integer.MIN_VALUE, Integer.MAX_VALUE)).isZero();
+    }
+
+    @Test
+    public void patchAll_reportsWhichPatchesWereApplied()
+    {
+        List<Product> products = bulkRepository.insertAll(new ArrayList<>(Arrays.asList(
+                new Product(null, "iphone", 23, 800.00),
+                new Product(null, "ipod", 27, 400.00))));
+        int iphone = products.get(0).getId();
+        int ipod = products.get(1).getId();
+
+        int[] updated = bulkRepository.patchAll(Arrays.asList(
+                ProductPatch.builder().id(iphone).price(900.00).build(),
+                ProductPatch.builder().id(ipod).quantity(1).version(7L).build(),  //stale version
+                ProductPatch.builder().id(-1).name("missing").build()));
+
+        assertThat(updated).containsExactly(1, 0, 0);
+        assertThat(repository.findById(iphone).get().getPrice()).isEqualTo(900.00);
+        assertThat(repository.findById(ipod).get().getQuantity()).isEqualTo(27);
+    }
+
+    @Test
+    public void adjustQuantities_floorsAtZero_andSkipsMissingProducts()
+    {
+        List<Product> products = bulkRepository.insertAll(new ArrayList<>(Arrays.asList(
+                new Product(null, "iphone", 23, 800.00),
+                new Product(null, "ipod", 5, 400.00))));
+        int iphone = products.get(0).getId();
+        int ipod = products.get(1).getId();
+        Map<Integer, Long> deltas = new HashMap<>();
+        deltas.put(iphone, -3L);
+        deltas.put(ipod, -8L);
+        deltas.put(-1, 4L);
+
+        Map<Integer, Integer> before = bulkRepository.adjustQuantities(deltas);
+
+        assertThat(before).containsOnly(entry(iphone, 23), entry(ipod, 5));
+        assertThat(repository.findById(iphone).get().getQuantity()).isEqualTo(20);
+        assertThat(repository.findById(ipod).get().getQuantity()).isZero();
+        assertThat(bulkRepository.quantities(Arrays.asList(iphone, -1))).containsOnly(entry(iphone, 20));
+    }
+
+    @Test
+    public void scanStock_readsEveryRowAsPrimitives()
+    {
+        repository.saveAll(Arrays.asList(new Product(null, "iphone", 23, 800.00), new Product(null, "ipod", null, null)));
+        List<String> rows = new ArrayList<>();
+
+        bulkRepository.scanStock((quantity, price) -> rows.add(quantity + "@" + price));
+
+        assertThat(rows).containsExactlyInAnyOrder("23@800.0", "0@NaN");
+    }
+}
@@ -0,0 +1,168 @@
+package com.junming.spring_boot_crud_example.repositorytest;
+
+import com.junming.spring_boot_crud_example.dto.ProductSearch;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import org.assertj.core.api.recursive.comparison.RecursiveComparisonConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//@DataJpaTest only starts the JPA layer (entities, repositories, an embedded H2 database). Every test runs in a transaction that is rolled back at the end.
+@DataJpaTest
+public class ProductRepositoryTest {
+
+    @Autowired
+    ProductRepository repository;
+
+    List<Product> saved;
+
+    @BeforeEach
+    public void setUp()
+    {
+        saved = repository.saveAll(Arrays.asList(
+                new Product(null, "iphone", 23, 800.00),
+                new Product(null, "ipod", 27, 400.00),
+                new Product(null, "imac", 31, 2500.00)));
+    }
+
+    @Test
+    public void findByIdGreaterThan_walksTheTableInKeysetPages()
+    {
+        List<Product> first = repository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, 2));
+        assertThat(first).extracting(Product::getName).containsExactly("iphone", "ipod");
+
+        //the cursor for the next page is the id of the last product we received
+        List<Product> second = repository.findByIdGreaterThanOrderByIdAsc(first.get(1).getId(), PageRequest.of(0, 2));
+        assertThat(second).extracting(Product::getName).containsExactly("imac");
+    }
+
+    @Test
+    public void viewQueries_returnTheSameRowsAsTheEntityQueries()
+    {
+        //lastModified is left out: the database stores it with less precision than the Instant it was given
+        List<ProductView> expected = saved.stream().map(ProductView::of).collect(Collectors.toList());
+        RecursiveComparisonConfiguration ignoringLastModified = RecursiveComparisonConfiguration.builder()
+                .withIgnoredFields("lastModified").build();
+
+        assertThat(repository.findAllViews()).usingRecursiveFieldByFieldElementComparator(ignoringLastModified).isEqualTo(expected);
+        assertThat(repository.findViewsByIdGreaterThanOrderByIdAsc(saved.get(0).getId(), PageRequest.of(0, 1)))
+                .usingRecursiveFieldByFieldElementComparator(ignoringLastModified).containsExactly(expected.get(1));
+        assertThat(repository.findViewById(saved.get(2).getId()).get()).usingRecursiveComparison().ignoringFields("lastModified")
+                .isEqualTo(expected.get(2));
+    }
+
+    @Test
+    public void findFirstByName_returnsOldestProductWhenNameIsDuplicated()
+    {
+        repository.save(new Product(null, "iphone", 1, 1.00));
+
+        ProductView view = repository.findFirstByNameOrderByIdAsc("iphone").get();
+
+        assertThat(view.getId()).isEqualTo(saved.get(0).getId());
+        assertThat(view.getPrice()).isEqualTo(800.00);
+        assertThat(repository.findFirstByNameOrderByIdAsc("ipad")).isEmpty();
+    }
+
+    @Test
+    public void patch_changesOnlyGivenFieldsAndBumpsVersion()
+    {
+        Product iphone = saved.get(0);
+        Instant before = Instant.now().truncatedTo(ChronoUnit.SECONDS);  //MySQL keeps whole seconds
+
+        assertThat(repository.patch(iphone.getId(), null, 5, null, null)).isEqualTo(1);
+
+        Product patched = repository.findById(iphone.getId()).get();
+        assertThat(patched.getQuantity()).isEqualTo(5);
+        assertThat(patched.getName()).isEqualTo("iphone");
+        assertThat(patched.getPrice()).isEqualTo(800.00);
+        assertThat(patched.getVersion()).isEqualTo(iphone.getVersion() + 1);
+        assertThat(patched.getLastModified()).isBetween(before, Instant.now());  //stamped from the JVM clock
+    }
+
+    @Test
+    public void patch_withStaleVersion_changesNothing()
+    {
+        Product iphone = saved.get(0);
+        repository.patch(iphone.getId(), "iphone 2", null, null, iphone.getVersion());
+
+        //a second writer still holding the old version must not overwrite the first one
+        assertThat(repository.patch(iphone.getId(), "iphone 3", null, null, iphone.getVersion())).isEqualTo(0);
+        assertThat(repository.findById(iphone.getId()).get().getName()).isEqualTo("iphone 2");
+    }
+
+    @Test
+    public void adjustQuantity_neverGoesBelowZero()
+    {
+        int iphone = saved.get(0).getId();  //quantity 23
+
+        assertThat(repository.adjustQuantity(iphone, 7)).isEqualTo(1);
+        assertThat(repository.adjustQuantity(iphone, -30)).isEqualTo(1);
+        assertThat(repository.adjustQuantity(iphone, -1)).isEqualTo(0);  //out of stock
+        assertThat(repository.findById(iphone).get().getQuantity()).isEqualTo(0);
+    }
+
+    @Test
+    public void search_combinesFiltersAndSortsInDatabase()
+    {
+        ProductSearch search = ProductSearch.builder().namePrefix("i").maxPrice(1000.00).minQuantity(20)
+                .sort("price").direction(Sort.Direction.DESC).build();
+
+        assertThat(repository.search(search, 10)).extracting(ProductView::getName).containsExactly("iphone", "ipod");
+        assertThat(repository.search(search, 1)).extracting(ProductView::getName).containsExactly("iphone");
+    }
+
+    @Test
+    public void search_treatsWildcardsInPrefixLiterally()
+    {
+        repository.save(new Product(null, "100% cotton", 5, 10.00));
+        repository.save(new Product(null, "1000 pins", 5, 10.00));
+
+        ProductSearch search = ProductSearch.builder().namePrefix("100%").build();
+
+        assertThat(repository.search(search, 10)).extracting(ProductView::getName).containsExactly("100% cotton");
+    }
+
+    @Test
+    public void catalogVersion_changesOnEveryKindOfWrite()
+    {
+        String initial = repository.catalogVersion().toETag();
+
+        repository.patch(saved.get(0).getId(), null, 1, null, null);
+        String afterUpdate = repository.catalogVersion().toETag();
+        repository.save(new Product(null, "ipad", 5, 600.00));
+        String afterInsert = repository.catalogVersion().toETag();
+        repository.deleteById(saved.get(1).getId());
+        String afterDelete = repository.catalogVersion().toETag();
+
+        assertThat(Arrays.asList(initial, afterUpdate, afterInsert, afterDelete)).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void save_setsLastModified()
+    {
+        assertThat(repository.findById(saved.get(0).getId()).get().getLastModified()).isNotNull();
+    }
+
+    @Test
+    public void streamAll_returnsEveryProductInIdOrder()
+    {
+        try (Stream<Product> products = repository.streamAll()) {
+            assertThat(products.map(Product::getId).collect(Collectors.toList()))
+                    .containsExactlyElementsOf(saved.stream().map(Product::getId).collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.config.DataSourceRouting;
+import com.junming.spring_boot_crud_example.dto.CatalogVersion;
+import com.junming.spring_boot_crud_example.dto.InventoryReport;
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import com.junming.spring_boot_crud_example.service.InventoryAnalytics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class InventoryAnalyticsTest {
+
+    ProductRepository repository = Mockito.mock(ProductRepository.class);
+    ProductBulkRepository bulkRepository = Mockito.mock(ProductBulkRepository.class);
+
+    //a long refresh interval, so only the calls of the tests load anything
+    InventoryAnalytics analytics = new InventoryAnalytics(repository, bulkRepository, noRouting(), 10, Duration.ofHours(1), 4);
+
+    @AfterEach
+    public void tearDown()
+    {
+        analytics.shutdown();
+    }
+
+    @Test
+    public void report_matchesASequentialScan_acrossManyForkJoinTasks()
+    {
+        //enough rows to be split into several tasks; every 50th product has no price
+        int rows = 100_000;
+        int[] quantities = new int[rows];
+        double[] prices = new double[rows];
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            quantities[i] = random.nextInt(100);
+            prices[i] = i % 50 == 0 ? Double.NaN : 1 + random.nextInt(999);
+        }
+        Mockito.when(repository.catalogVersion()).thenReturn(new CatalogVersion(rows, rows, 0L));
+        Mockito.doAnswer(invocation -> {
+            ProductBulkRepository.StockRowHandler handler = invocation.getArgument(0);
+            for (int i = 0; i < rows; i++) {
+                handler.row(quantities[i], prices[i]);
+            }
+            return null;
+        }).when(bulkRepository).scanStock(any());
+
+        InventoryReport report = analytics.report(5, 4);
+
+        long quantity = 0;
+        double value = 0;
+        long lowStock = 0;
+        long unpriced = 0;
+        for (int i = 0; i < rows; i++) {
+            quantity += quantities[i];
+            lowStock += quantities[i] <= 5 ? 1 : 0;
+            if (Double.isNaN(prices[i])) {
+                unpriced++;
+            } else {
+                value += prices[i] * quantities[i];
+            }
+        }
+        assertThat(report.getProducts()).isEqualTo(rows);
+        assertThat(report.getTotalQuantity()).isEqualTo(quantity);
+        assertThat(report.getTotalStockValue()).isCloseTo(value, within(1e-6 * value));
+        assertThat(report.getLowStockCount()).isEqualTo(lowStock);
+        assertThat(report.getUnpricedCount()).isEqualTo(unpriced);
+        assertThat(report.getPriceHistogram()).hasSize(4);
+        assertThat(report.getPriceHistogram().stream().mapToLong(InventoryReport.PriceBucket::getCount).sum()).isEqualTo(rows - unpriced);
+        assertThat(report.getPriceHistogram().get(0).getFrom()).isEqualTo(1.0);
+        assertThat(report.getPriceHistogram().get(3).getTo()).isEqualTo(999.0);
+        assertThat((long) analytics.stats().get("footprintBytes")).isGreaterThanOrEqualTo(12L * rows);
+    }
+
+    @Test
+    public void refresh_onlyRereadsTheTableWhenItChanged()
+    {
+        Mockito.when(repository.catalogVersion()).thenReturn(new CatalogVersion(1, 1, 0L), new CatalogVersion(1, 1, 0L),
+                new CatalogVersion(1, 1, 1L));
+        Mockito.doAnswer(invocation -> {
+            ProductBulkRepository.StockRowHandler handler = invocation.getArgument(0);
+            handler.row(3, 800.00);
+            return null;
+        }).when(bulkRepository).scanStock(any());
+
+        analytics.refresh();
+        analytics.refresh();  //same version: kept
+        verify(bulkRepository, times(1)).scanStock(any());
+
+        analytics.refresh();  //an update bumped the version sum
+        verify(bulkRepository, times(2)).scanStock(any());
+        InventoryReport report = analytics.report(null, 10);
+        assertThat(report.getTotalStockValue()).isEqualTo(2400.00);
+        assertThat(report.getLowStockThreshold()).isEqualTo(10);
+        assertThat(report.getLowStockCount()).isEqualTo(1);
+        assertThat(report.getPriceHistogram()).extracting(InventoryReport.PriceBucket::getCount).containsExactly(1L);  //one price, one bucket
+    }
+
+    @Test
+    public void backgroundRefresh_onlyRunsWhileReportsAreAskedFor() throws InterruptedException
+    {
+        Mockito.when(repository.catalogVersion()).thenReturn(new CatalogVersion(0, 0, 0L));
+        InventoryAnalytics refreshing = new InventoryAnalytics(repository, bulkRepository, noRouting(), 10, Duration.ofMillis(20), 1);
+        try {
+            Thread.sleep(200);  //ten intervals, and nobody asked for a report
+            verify(repository, never()).catalogVersion();
+
+            refreshing.report(null, 10);
+            verify(repository, timeout(1000).atLeast(3)).catalogVersion();  //the report's own check, then the scheduled ones
+
+            Thread.sleep(200);  //idle again: the refresh pauses after three intervals
+            int calls = Mockito.mockingDetails(repository).getInvocations().size();
+            Thread.sleep(200);
+            assertThat(Mockito.mockingDetails(repository).getInvocations()).hasSize(calls);
+        } finally {
+            refreshing.shutdown();
+        }
+    }
+
+    @Test
+    public void refresh_readsFromAReplica_whenRoutingIsOn()
+    {
+        DataSourceRouting routing = new DataSourceRouting(2, Duration.ofSeconds(5), "");
+        @SuppressWarnings("unchecked")
+        ObjectProvider<DataSourceRouting> provider = Mockito.mock(ObjectProvider.class);
+        Mockito.when(provider.getIfAvailable()).thenReturn(routing);
+        List<Integer> replicas = new ArrayList<>();
+        Mockito.when(repository.catalogVersion()).thenAnswer(invocation -> {
+            replicas.add(routing.currentReplica());
+            return new CatalogVersion(1, 1, 0L);
+        });
+        Mockito.doAnswer(invocation -> {
+            replicas.add(routing.currentReplica());
+            return null;
+        }).when(bulkRepository).scanStock(any());
+        InventoryAnalytics routed = new InventoryAnalytics(repository, bulkRepository, provider, 10, Duration.ofHours(1), 1);
+        try {
+            routed.refresh();
+        } finally {
+            routed.shutdown();
+        }
+
+        assertThat(replicas).containsExactly(0, 0);  //the version and the rows from the same replica
+        assertThat(routing.currentReplica()).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<DataSourceRouting> noRouting()
+    {
+        return Mockito.mock(ObjectProvider.class);  //getIfAvailable() answers null
+    }
+}
@@ -0,0 +1,94 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.service.ProductCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductCacheTest {
+
+    ProductCache cache = new ProductCache(100, Duration.ofMinutes(1));
+
+    ExecutorService threads = Executors.newCachedThreadPool();
+
+    ProductView STALE = new ProductView(1, "iphone", 23, 800.00, 0L, null);
+    ProductView FRESH = new ProductView(1, "iphone", 5, 800.00, 1L, null);
+
+    @AfterEach
+    public void tearDown()
+    {
+        threads.shutdownNow();
+    }
+
+    //The deadlock the load test ran into: a writer that holds a connection invalidates while a loader waits for a connection.
+    //The loader here waits on a latch that only the writer releases, after its invalidate. Before the fix the invalidate waited for the loader.
+    @Test
+    public void invalidate_doesNotWaitForARunningLoad() throws Exception
+    {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch connectionReleased = new CountDownLatch(1);
+        Future<ProductView> load = threads.submit(() -> cache.getById(1, id -> {
+            loading.countDown();
+            await(connectionReleased);
+            return STALE;
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Future<?> write = threads.submit(() -> {
+            cache.invalidate(1);
+            connectionReleased.countDown();
+        });
+
+        write.get(2, TimeUnit.SECONDS);  //well before the loader gives up waiting
+        assertThat(load.get(5, TimeUnit.SECONDS)).isEqualTo(STALE);
+        assertThat(cache.getById(1, id -> FRESH)).isEqualTo(FRESH);  //the load that raced the write was not cached
+    }
+
+    @Test
+    public void nameLoad_thatRacedAWrite_isNotCachedById() throws Exception
+    {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        Future<ProductView> load = threads.submit(() -> cache.getByName("iphone", name -> {
+            loading.countDown();
+            await(written);
+            return STALE;
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        cache.invalidate(1);
+        written.countDown();
+
+        assertThat(load.get(5, TimeUnit.SECONDS)).isEqualTo(STALE);
+        assertThat(cache.getById(1, id -> FRESH)).isEqualTo(FRESH);
+        assertThat(cache.getByName("iphone", name -> FRESH)).isEqualTo(FRESH);
+    }
+
+    @Test
+    public void cachedProduct_isServedUntilInvalidated_missingOnesAreNot()
+    {
+        assertThat(cache.getById(1, id -> STALE)).isEqualTo(STALE);
+        assertThat(cache.getById(1, id -> FRESH)).isEqualTo(STALE);
+        cache.invalidate(1);
+        assertThat(cache.getById(1, id -> FRESH)).isEqualTo(FRESH);
+        assertThat(cache.getById(2, id -> null)).isNull();
+        assertThat(cache.getById(2, id -> FRESH)).isEqualTo(FRESH);  //missing products are not cached
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.junming.spring_boot_crud_example.dto.ImportResult;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ProductCatalogService;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductCatalogServiceTest {
+
+    @Mock
+    ProductService productService;
+
+    @Spy
+    ObjectMapper mapper = new ObjectMapper();
+
+    @InjectMocks
+    ProductCatalogService catalog;
+
+    @BeforeEach
+    public void setUp()
+    {
+        ReflectionTestUtils.setField(catalog, "batchSize", 2);
+        ReflectionTestUtils.setField(catalog, "maxReportedErrors", 10);
+    }
+
+    @Test
+    public void importCsv_savesInBatchesAndReportsBadLines() throws Exception
+    {
+        ArgumentCaptor<List<Product>> batches = ArgumentCaptor.forClass(List.class);
+        Mockito.when(productService.saveProducts(batches.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ImportResult result = catalog.importCsv(body(
+                "name,quantity,price\n"
+                + "iphone,23,800.0\n"
+                + "\"keyboard, magic\",100,150.0\n"
+                + "ipod,many,400.0\n"      //line 4: not a number
+                + "\n"
+                + ",1,1.0\n"               //line 6: no name
+                + "imac,31,2500.0\n"));
+
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getFailed()).isEqualTo(2);
+        assertThat(result.getErrors()).extracting(ImportResult.LineError::getLine).containsExactly(4L, 6L);
+        assertThat(batches.getAllValues()).hasSize(2);
+        assertThat(batches.getAllValues().get(0)).extracting(Product::getName).containsExactly("iphone", "keyboard, magic");
+        assertThat(batches.getAllValues().get(1)).extracting(Product::getName).containsExactly("imac");
+    }
+
+    @Test
+    public void importCsv_unknownColumn_importsNothing() throws Exception
+    {
+        ImportResult result = catalog.importCsv(body("name,colour\niphone,black\n"));
+
+        assertThat(result.getImported()).isZero();
+        assertThat(result.getErrors()).extracting(ImportResult.LineError::getLine).containsExactly(1L);
+        verify(productService, times(0)).saveProducts(anyList());
+    }
+
+    @Test
+    public void importNdjson_failedBatch_doesNotStopLaterBatches() throws Exception
+    {
+        Mockito.when(productService.saveProducts(anyList()))
+                .thenThrow(new IllegalStateException("deadlock"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ImportResult result = catalog.importNdjson(body(
+                "{\"name\":\"iphone\",\"quantity\":23,\"price\":800.0}\n"
+                + "{\"name\":\"ipod\",\"quantity\":27,\"price\":400.0}\n"
+                + "{\"name\":\"imac\",\"quantity\":31,\"price\":2500.0}\n"));
+
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getFailed()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getMessage()).contains("lines 1-2").contains("deadlock");
+    }
+
+    @Test
+    public void exportCsv_writesHeaderAndOneLinePerProduct() throws Exception
+    {
+        Mockito.doAnswer(invocation -> {
+            Consumer<Product> action = invocation.getArgument(0);
+            action.accept(new Product(1, "iphone", 23, 800.00));
+            action.accept(new Product(2, "keyboard, magic", 100, 150.00, 3L, Instant.parse("2021-07-01T10:15:30Z")));
+            return null;
+        }).when(productService).forEachProduct(any());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        catalog.exportCsv(out);
+
+        assertThat(out.toString("UTF-8").split("\n")).containsExactly(
+                "id,name,quantity,price,version,lastModified",
+                "1,iphone,23,800.0,0,",
+                "2,\"keyboard, magic\",100,150.0,3,2021-07-01T10:15:30Z");
+    }
+
+    @Test
+    public void exportedCsv_importsBackIncludingLineBreaksInNames() throws Exception
+    {
+        List<Product> exported = Arrays.asList(
+                new Product(1, "iphone", 23, 800.00),
+                new Product(2, "keyboard, \"magic\"\nsecond line", 100, 150.00, 3L, Instant.parse("2021-07-01T10:15:30Z")),
+                new Product(3, "imac", 31, 2500.00));
+        Mockito.doAnswer(invocation -> {
+            exported.forEach(invocation.<Consumer<Product>>getArgument(0));
+            return null;
+        }).when(productService).forEachProduct(any());
+        ArgumentCaptor<List<Product>> batches = ArgumentCaptor.forClass(List.class);
+        Mockito.when(productService.saveProducts(batches.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        catalog.exportCsv(out);
+
+        ImportResult result = catalog.importCsv(new ByteArrayInputStream((out.toString("UTF-8") + "4,ipod,many,400.0,0,\n").getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(batches.getAllValues().get(0)).containsExactly(exported.get(0), exported.get(1));
+        assertThat(batches.getAllValues().get(1)).containsExactly(exported.get(2));
+        //header on line 1, the multi-line name takes lines 3-4, so the bad row is on line 6
+        assertThat(result.getErrors()).extracting(ImportResult.LineError::getLine).containsExactly(6L);
+    }
+
+    private static InputStream body(String content)
+    {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
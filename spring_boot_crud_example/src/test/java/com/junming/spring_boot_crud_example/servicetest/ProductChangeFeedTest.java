@@ -0,0 +1,95 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.dto.ProductChange;
+import com.junming.spring_boot_crud_example.dto.ProductChanges;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.service.ProductChangeFeed;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductChangeFeedTest {
+
+    //keeps the last 4 changes
+    ProductChangeFeed feed = new ProductChangeFeed(4, 1);
+
+    @AfterEach
+    public void tearDown()
+    {
+        feed.shutdown();
+    }
+
+    @Test
+    public void changesAfterCursor_areReadInPages()
+    {
+        String start = feed.cursor();
+        feed.saved(new ProductView(1, "iphone", 23, 800.00, 0L, null));
+        feed.changed(1);
+        feed.deleted(1);
+
+        ProductChanges first = feed.read(start, 2);
+        assertThat(first.isResync()).isFalse();
+        assertThat(first.getChanges()).extracting(ProductChange::getType)
+                .containsExactly(ProductChange.Type.SAVED, ProductChange.Type.CHANGED);
+        assertThat(first.getChanges().get(0).getProduct().getName()).isEqualTo("iphone");
+
+        ProductChanges second = feed.read(first.getNext(), 2);
+        assertThat(second.getChanges()).extracting(ProductChange::getType).containsExactly(ProductChange.Type.DELETED);
+        assertThat(second.getNext()).isEqualTo(feed.cursor());
+
+        ProductChanges none = feed.read(second.getNext(), 2);
+        assertThat(none.getChanges()).isEmpty();
+        assertThat(none.isResync()).isFalse();
+    }
+
+    @Test
+    public void readerFallenBehindTheRing_isToldToResync()
+    {
+        String start = feed.cursor();
+        for (int id = 1; id <= 5; id++) {
+            feed.changed(id);
+        }
+
+        ProductChanges changes = feed.read(start, 10);
+        assertThat(changes.isResync()).isTrue();
+        assertThat(changes.getChanges()).isEmpty();
+        //from the cursor that came with the resync the reader is back on track
+        feed.changed(6);
+        assertThat(feed.read(changes.getNext(), 10).getChanges()).extracting(ProductChange::getId).containsExactly(6);
+    }
+
+    @Test
+    public void cursorFromAnotherInstance_isToldToResync()
+    {
+        assertThat(feed.read("0-0", 10).isResync()).isTrue();
+        assertThat(feed.read("not a cursor", 10).isResync()).isTrue();
+        assertThat(feed.read(feed.cursor() + "99", 10).isResync()).isTrue();  //an offset this instance has not reached
+    }
+
+    @Test
+    public void subscriptions_areCalledAfterChanges_untilCancelled() throws Exception
+    {
+        CountDownLatch called = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        ProductChangeFeed.Subscription subscription = feed.subscribe(() -> {
+            calls.incrementAndGet();
+            called.countDown();
+        });
+        assertThat(feed.subscriptionCount()).isEqualTo(1);
+
+        feed.reload();
+        assertThat(called.await(5, TimeUnit.SECONDS)).isTrue();
+
+        subscription.cancel();
+        assertThat(feed.subscriptionCount()).isZero();
+        int before = calls.get();
+        feed.reload();
+        Thread.sleep(100);
+        assertThat(calls.get()).isEqualTo(before);
+    }
+}
@@ -0,0 +1,84 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import com.junming.spring_boot_crud_example.service.ProductNameIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProductNameIndexTest {
+
+    ProductNameIndex index = new ProductNameIndex();
+
+    @BeforeEach
+    public void setUp()
+    {
+        index.put(1, "iphone");
+        index.put(2, "ipod");
+        index.put(3, "iMac");
+        index.put(4, "magic keyboard");
+    }
+
+    @Test
+    public void suggest_returnsPrefixMatchesCaseInsensitiveInNameOrder()
+    {
+        assertThat(index.suggest("IP", 10)).extracting(ProductSuggestion::getName).containsExactly("iphone", "ipod");
+        assertThat(index.suggest("i", 2)).extracting(ProductSuggestion::getName).containsExactly("iMac", "iphone");
+    }
+
+    @Test
+    public void suggest_fillsUpWithFuzzyMatches()
+    {
+        //no name starts with "iphnoe", but it shares enough trigrams with "iphone"
+        assertThat(index.suggest("iphnoe", 10)).extracting(ProductSuggestion::getName).containsExactly("iphone");
+        //matches in the middle of a name
+        assertThat(index.suggest("keyboard", 10)).extracting(ProductSuggestion::getName).containsExactly("magic keyboard");
+    }
+
+    @Test
+    public void renameAndRemove_areVisibleImmediately()
+    {
+        index.put(1, "galaxy");
+        index.remove(2);
+
+        assertThat(index.suggest("ip", 10)).isEmpty();
+        assertThat(index.suggest("gal", 10)).extracting(ProductSuggestion::getId).containsExactly(1);
+    }
+
+    @Test
+    public void removeRange_dropsOnlyIdsInRange()
+    {
+        index.removeRange(2, 3);
+
+        assertThat(index.stats().get("products")).isEqualTo(2);
+        assertThat(index.estimatedBytes()).isPositive();
+    }
+
+    @Test
+    public void rebuild_keepsServingTheOldIndex_andReplaysWritesMadeMeanwhile()
+    {
+        index.rebuild(load -> {
+            load.accept(1, "iphone");
+            load.accept(2, "ipod");  //read from the table before the delete below committed
+            assertThat(index.suggest("ip", 10)).hasSize(2);  //the old index still answers while the new one fills
+            index.remove(2);
+            index.put(5, "ipad");
+        });
+
+        assertThat(index.suggest("ip", 10)).extracting(ProductSuggestion::getName).containsExactly("ipad", "iphone");
+        assertThat(index.suggest("imac", 10)).isEmpty();  //not in the table any more
+    }
+
+    @Test
+    public void failedRebuild_leavesTheIndexAsItWas()
+    {
+        assertThatThrownBy(() -> index.rebuild(load -> {
+            load.accept(1, "iphone");
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(index.suggest("i", 10)).hasSize(3);
+    }
+}
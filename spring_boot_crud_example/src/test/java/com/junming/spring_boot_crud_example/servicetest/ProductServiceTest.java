@@ -0,0 +1,130 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.dto.ProductSuggestion;
+import com.junming.spring_boot_crud_example.dto.ProductView;
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import com.junming.spring_boot_crud_example.repository.ProductRepository;
+import com.junming.spring_boot_crud_example.service.ProductCache;
+import com.junming.spring_boot_crud_example.service.ProductChangeFeed;
+import com.junming.spring_boot_crud_example.service.ProductNameIndex;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+//A plain unit test: no Spring context at all. Mockito creates the mocks and injects them into the service fields.
+@ExtendWith(MockitoExtension.class)
+public class ProductServiceTest {
+
+    @Mock
+    ProductRepository repository;
+
+    @Mock
+    ProductBulkRepository bulkRepository;
+
+    @Spy
+    ProductCache cache = new ProductCache(100, Duration.ofMinutes(1));
+
+    @Spy
+    ProductNameIndex nameIndex = new ProductNameIndex();
+
+    @Spy
+    ProductChangeFeed changes = new ProductChangeFeed(16, 1);
+
+    @InjectMocks
+    ProductService service;
+
+    ProductView VIEW_1 = new ProductView(1, "iphone", 23, 800.00, 0L, null);
+
+    @Test
+    public void getProductById_isServedFromCacheAfterFirstLookup()
+    {
+        Mockito.when(repository.findViewById(1)).thenReturn(Optional.of(VIEW_1));
+
+        assertThat(service.getProductById(1).getName()).isEqualTo("iphone");
+        assertThat(service.getProductById(1).getName()).isEqualTo("iphone");
+
+        verify(repository, times(1)).findViewById(1);
+    }
+
+    @Test
+    public void getProductByName_isServedFromCacheAfterFirstLookup()
+    {
+        Mockito.when(repository.findFirstByNameOrderByIdAsc("iphone")).thenReturn(Optional.of(VIEW_1));
+
+        service.getProductByName("iphone");
+        assertThat(service.getProductByName("iphone").getId()).isEqualTo(1);
+
+        verify(repository, times(1)).findFirstByNameOrderByIdAsc("iphone");
+    }
+
+    @Test
+    public void updateProduct_invalidatesCachedLookups()
+    {
+        Product renamed = new Product(1, "iphone pro", 23, 900.00);
+        Mockito.when(repository.findFirstByNameOrderByIdAsc("iphone")).thenReturn(Optional.of(VIEW_1), Optional.empty());
+        Mockito.when(repository.findById(1)).thenReturn(Optional.of(new Product(1, "iphone", 23, 800.00)));
+        Mockito.when(repository.findViewById(1)).thenReturn(Optional.of(ProductView.of(renamed)));
+        Mockito.when(repository.save(Mockito.any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyInt(), Mockito.any()))
+                .thenReturn(Collections.singletonList(renamed), Collections.emptyList());
+
+        service.getProductByName("iphone");
+        service.updateProduct(renamed);
+
+        //the old name must not resolve to the renamed product any more
+        assertThat(service.getProductByName("iphone")).isNull();
+        assertThat(service.getProductById(1).getName()).isEqualTo("iphone pro");
+        assertThat(service.suggestProducts("iphone", 10)).extracting(ProductSuggestion::getName).containsExactly("iphone pro");
+        verify(changes).saved(ProductView.of(renamed));  //followers of the change feed hear about it too
+    }
+
+    @Test
+    public void nameIndex_isLoadedOnTheFirstSuggestionOnly()
+    {
+        Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(Mockito.anyInt(), Mockito.any()))
+                .thenReturn(Collections.singletonList(new Product(1, "iphone", 23, 800.00)), Collections.emptyList());
+
+        assertThat(service.suggestProducts("ip", 10)).extracting(ProductSuggestion::getName).containsExactly("iphone");
+        assertThat(service.suggestProducts("iph", 10)).extracting(ProductSuggestion::getName).containsExactly("iphone");
+
+        verify(repository, times(2)).findByIdGreaterThanOrderByIdAsc(Mockito.anyInt(), Mockito.any());  //one page and the empty end, once
+    }
+
+    @Test
+    public void deleteProducts_publishesOnlyTheProductsThatExisted()
+    {
+        Mockito.when(bulkRepository.deleteAll(Arrays.asList(1, 2, 3))).thenReturn(Arrays.asList(1, 3));
+
+        assertThat(service.deleteProducts(Arrays.asList(1, 2, 3))).isEqualTo(2);
+
+        verify(changes).deleted(1);
+        verify(changes).deleted(3);
+        verify(changes, never()).deleted(2);
+        verify(nameIndex, never()).remove(2);
+    }
+
+    @Test
+    public void cachedProduct_isSharedWithoutCopying()
+    {
+        Mockito.when(repository.findViewById(1)).thenReturn(Optional.of(VIEW_1));
+
+        //ProductView is immutable, so every caller can be handed the cached instance itself
+        assertThat(service.getProductById(1)).isSameAs(service.getProductById(1));
+    }
+}
@@ -0,0 +1,131 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.entity.Product;
+import com.junming.spring_boot_crud_example.service.ProductService;
+import com.junming.spring_boot_crud_example.service.ProductWriteBehind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+
+public class ProductWriteBehindTest {
+
+    ProductService service = Mockito.mock(ProductService.class);
+
+    ProductWriteBehind writeBehind;
+
+    @AfterEach
+    public void tearDown()
+    {
+        writeBehind.shutdown();
+    }
+
+    @Test
+    public void singleWrites_areCommittedInBatches_andAcknowledgedWithTheirIds() throws Exception
+    {
+        AtomicInteger ids = new AtomicInteger();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        Mockito.when(service.saveProducts(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            batchSizes.add(products.size());
+            products.forEach(product -> product.setId(ids.incrementAndGet()));
+            return products;
+        });
+        writeBehind = new ProductWriteBehind(service, 100, 4, Duration.ofMillis(200), Duration.ofMillis(10));
+
+        List<CompletableFuture<Product>> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            saved.add(writeBehind.submit(new Product(null, "product-" + i, i, 1.0)));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            Product product = saved.get(i).get(5, TimeUnit.SECONDS);
+            assertThat(product.getName()).isEqualTo("product-" + i);
+            assertThat(product.getId()).isNotNull();
+        }
+        assertThat(batchSizes).allMatch(size -> size <= 4);
+        assertThat(batchSizes.size()).isLessThan(10);
+    }
+
+    @Test
+    public void failedBatch_failsEveryWriteInIt()
+    {
+        Mockito.when(service.saveProducts(anyList())).thenThrow(new IllegalStateException("database down"));
+        writeBehind = new ProductWriteBehind(service, 100, 4, Duration.ofMillis(50), Duration.ofMillis(10));
+
+        CompletableFuture<Product> first = writeBehind.submit(new Product(null, "iphone", 23, 800.00));
+        CompletableFuture<Product> second = writeBehind.submit(new Product(null, "ipad", 12, 600.00));
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+    }
+
+    @Test
+    public void productBreakingAConstraint_failsAlone()
+    {
+        AtomicInteger ids = new AtomicInteger();
+        Mockito.when(service.saveProducts(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            products.forEach(product -> product.setId(ids.incrementAndGet()));  //set before the failing row, as the JDBC batches do
+            if (products.stream().anyMatch(product -> product.getName().length() > 255)) {
+                throw new DataIntegrityViolationException("value too long for column name");
+            }
+            return products;
+        });
+        writeBehind = new ProductWriteBehind(service, 100, 8, Duration.ofMillis(200), Duration.ofMillis(10));
+
+        List<CompletableFuture<Product>> saved = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            saved.add(writeBehind.submit(new Product(null, i == 5 ? String.join("", Collections.nCopies(300, "x")) : "product-" + i, i, 1.0)));
+        }
+
+        assertThatThrownBy(() -> saved.get(5).get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(DataIntegrityViolationException.class);
+        for (int i = 0; i < 8; i++) {
+            if (i != 5) {
+                assertThat(saved.get(i).join().getName()).isEqualTo("product-" + i);
+            }
+        }
+    }
+
+    @Test
+    public void fullQueue_pushesBackWith503() throws Exception
+    {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(service.saveProducts(anyList())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await();  //a slow commit, the queue fills up behind it
+            return invocation.getArgument(0);
+        });
+        writeBehind = new ProductWriteBehind(service, 1, 1, Duration.ofMillis(1), Duration.ofMillis(10));
+
+        CompletableFuture<Product> first = writeBehind.submit(new Product(null, "iphone", 23, 800.00));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Product> second = writeBehind.submit(new Product(null, "ipad", 12, 600.00));  //the one free place
+
+        assertThatThrownBy(() -> writeBehind.submit(new Product(null, "imac", 31, 2500.00)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("503");
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).getName()).isEqualTo("iphone");
+        assertThat(second.get(5, TimeUnit.SECONDS).getName()).isEqualTo("ipad");
+    }
+}
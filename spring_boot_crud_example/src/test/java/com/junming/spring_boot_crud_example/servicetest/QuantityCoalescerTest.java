@@ -0,0 +1,146 @@
+package com.junming.spring_boot_crud_example.servicetest;
+
+import com.junming.spring_boot_crud_example.repository.ProductBulkRepository;
+import com.junming.spring_boot_crud_example.service.ProductCache;
+import com.junming.spring_boot_crud_example.service.ProductChangeFeed;
+import com.junming.spring_boot_crud_example.service.QuantityCoalescer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.verify;
+
+public class QuantityCoalescerTest {
+
+    ProductBulkRepository bulkRepository = Mockito.mock(ProductBulkRepository.class);
+
+    //a long max-staleness, so only the flush() calls of the tests write anything
+    QuantityCoalescer coalescer = new QuantityCoalescer(bulkRepository, new ProductCache(100, Duration.ofMinutes(1)),
+            new ProductChangeFeed(16, 1), new HashSet<>(Arrays.asList(1, 2)), Duration.ofHours(1));
+
+    @BeforeEach
+    public void setUp()
+    {
+        stock(1, 10_000, 2, 0);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        Mockito.reset(bulkRepository);
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void concurrentDeltas_areFlushedAsOneSumPerProduct() throws Exception
+    {
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            threads.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    coalescer.add(1, -1);
+                    coalescer.add(2, 2);
+                }
+            });
+        }
+        threads.shutdown();
+        assertThat(threads.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        coalescer.flush();
+
+        Map<Integer, Long> expected = new HashMap<>();
+        expected.put(1, -8000L);
+        expected.put(2, 16000L);
+        verify(bulkRepository).adjustQuantities(expected);
+    }
+
+    @Test
+    public void failedFlush_keepsDeltasForNextFlush()
+    {
+        coalescer.add(1, 5);
+        Mockito.doThrow(new IllegalStateException("database down")).when(bulkRepository).adjustQuantities(anyMap());
+        assertThatThrownBy(coalescer::flush).isInstanceOf(IllegalStateException.class);
+
+        Mockito.reset(bulkRepository);
+        stock(1, 10_000, 2, 0);
+        coalescer.flush();
+
+        verify(bulkRepository).adjustQuantities(Collections.singletonMap(1, 5L));
+    }
+
+    @Test
+    public void decrementBeyondTheStock_isRejected_asIsAnyDeltaForAMissingProduct()
+    {
+        stock(1, 5);  //product 2 does not exist
+
+        assertThat(coalescer.add(1, -3)).isTrue();
+        assertThat(coalescer.add(1, -3)).isFalse();  //only 2 left
+        assertThat(coalescer.add(1, 4)).isTrue();
+        assertThat(coalescer.add(1, -6)).isTrue();
+        assertThat(coalescer.add(2, 1)).isFalse();
+        Mockito.when(bulkRepository.adjustQuantities(anyMap())).thenReturn(Collections.singletonMap(1, 5));
+        coalescer.flush();
+
+        verify(bulkRepository).adjustQuantities(Collections.singletonMap(1, -5L));
+        assertThat(coalescer.add(1, -1)).isFalse();  //sold out
+    }
+
+    @Test
+    public void flush_followsDirectWrites_andDropsDeltasOfDeletedProducts()
+    {
+        assertThat(coalescer.add(1, -100)).isTrue();
+        assertThat(coalescer.add(2, 3)).isTrue();
+        //meanwhile a PUT set product 1 to 40, and product 2 was deleted
+        Map<Integer, Integer> before = Collections.singletonMap(1, 40);
+        Mockito.when(bulkRepository.adjustQuantities(anyMap())).thenReturn(before);
+        stock(1, 0);
+
+        coalescer.flush();
+
+        //the database floored product 1 at 0, which is all the stock there is now
+        assertThat(coalescer.add(1, -1)).isFalse();
+        assertThat(coalescer.add(1, 1)).isTrue();
+        assertThat(coalescer.add(2, 1)).isFalse();
+    }
+
+    @Test
+    public void onlyHotProductsAreCoalesced()
+    {
+        assertThat(coalescer.isHot(1)).isTrue();
+        assertThat(coalescer.isHot(3)).isFalse();
+    }
+
+    //the quantities the database holds: id, quantity, id, quantity, ...
+    private void stock(int... idsAndQuantities)
+    {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < idsAndQuantities.length; i += 2) {
+            quantities.put(idsAndQuantities[i], idsAndQuantities[i + 1]);
+        }
+        Mockito.when(bulkRepository.quantities(anyCollection())).thenAnswer(invocation -> {
+            Map<Integer, Integer> found = new HashMap<>();
+            for (Integer id : invocation.<Collection<Integer>>getArgument(0)) {
+                if (quantities.containsKey(id)) {
+                    found.put(id, quantities.get(id));
+                }
+            }
+            return found;
+        });
+    }
+}